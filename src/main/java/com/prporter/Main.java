@@ -1,10 +1,16 @@
 package com.prporter;
 
+import com.prporter.ai.AIPatchClient;
+import com.prporter.ai.AIResponseCache;
+import com.prporter.ai.CircuitBreaker;
 import com.prporter.analyzer.PRAnalyzer;
 import com.prporter.checker.ConflictChecker;
+import com.prporter.git.FetchCoordinator;
+import com.prporter.git.InCoreCommitter;
 import com.prporter.model.ChangedFile;
 import com.prporter.model.FileStatus;
 import com.prporter.patcher.FilePatcher;
+import com.prporter.pipeline.PortPipeline;
 import com.prporter.report.ReportGenerator;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -20,7 +26,13 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Main {
     private static final String REPO_DIR = "pr-porter-repo";
@@ -56,7 +68,9 @@ public class Main {
             System.out.println("   Conflicts will be flagged for manual review");
         } else {
             System.out.println("   AI patching is ENABLED");
-            System.out.println("   Rate limiting: Exponential backoff with 5 retries");
+            System.out.println("   Concurrency: up to " + getIntEnv("AI_MAX_IN_FLIGHT", 4) + " requests in flight, " +
+                               getIntEnv("AI_REQUESTS_PER_SECOND", 2) + " new requests per second");
+            System.out.println("   Rate limiting: Exponential backoff with 5 retries, honouring Retry-After");
             System.out.println("   To disable: Set DISABLE_AI_PATCHING=true");
         }
         System.out.println();
@@ -85,6 +99,8 @@ public class Main {
                 // SSH authentication will use default SSH configuration
             }
 
+            FetchCoordinator fetchCoordinator;
+            long fetchTtlMillis = getIntEnv("FETCH_TTL_SECONDS", 300) * 1000L;
             if (isNewClone) {
                 // Clean up existing directory if it exists but is not a valid Git repo
                 if (repoDir.exists()) {
@@ -135,20 +151,22 @@ public class Main {
                             }
                         })
                         .call();
+                fetchCoordinator = new FetchCoordinator(git, credentialsProvider, fetchTtlMillis);
             } else {
                 // Open existing repository
                 System.out.println("Opening existing repository...");
                 System.out.println("Repository location: " + repoDir.getAbsolutePath());
                 git = Git.open(repoDir);
+                fetchCoordinator = new FetchCoordinator(git, credentialsProvider, fetchTtlMillis);
                 
                 // Completely reset the repository state
                 System.out.println("Resetting repository to clean state...");
-                resetRepository(git, credentialsProvider);
+                resetRepository(git, fetchCoordinator);
             }
 
             // Fetch all remotes before checkout
             System.out.println("Fetching all remotes before checkout...");
-            git.fetch().setRemote("origin").setCredentialsProvider(credentialsProvider).call();
+            fetchCoordinator.fetch();
 
             // Robustly check out the target branch
             boolean localBranchExists = git.getRepository().findRef(targetBranch) != null;
@@ -173,56 +191,153 @@ public class Main {
 
             // Initialize components
             System.out.println("Initializing components...");
-            PRAnalyzer prAnalyzer = new PRAnalyzer(git, credentialsProvider);
-            ConflictChecker conflictChecker = new ConflictChecker(git, credentialsProvider);
+            PRAnalyzer prAnalyzer = new PRAnalyzer(git, fetchCoordinator);
+            prAnalyzer.setAnalysisThreads(getIntEnv("ANALYSIS_THREADS", 1));
+            int hunkContext = getIntEnv("DIFF_CONTEXT_LINES", 0);
+            prAnalyzer.setHunkContext(hunkContext);
+            ConflictChecker conflictChecker = new ConflictChecker(git, fetchCoordinator);
+            boolean mergeCheck = "merge".equalsIgnoreCase(System.getenv("CONFLICT_CHECK_MODE"));
+            conflictChecker.setMergeCheck(mergeCheck);
             FilePatcher filePatcher = new FilePatcher(git, prAnalyzer);
+            String aiEndpoint = System.getenv("AI_ENDPOINT");
+            AIPatchClient aiClient = new AIPatchClient(
+                    aiEndpoint != null && !aiEndpoint.isEmpty() ? aiEndpoint : AIPatchClient.DEFAULT_ENDPOINT, openaiApiKey,
+                    getIntEnv("AI_MAX_IN_FLIGHT", 4), getIntEnv("AI_REQUESTS_PER_SECOND", 2));
+            aiClient.setStreaming(getBooleanEnv("AI_STREAMING"));
+            aiClient.setCircuitBreaker(new CircuitBreaker(getIntEnv("AI_CIRCUIT_FAILURES", 5),
+                    getIntEnv("AI_CIRCUIT_COOLDOWN_SECONDS", 30) * 1000L));
+            aiClient.setAdaptiveConcurrency(getBooleanEnv("AI_ADAPTIVE_CONCURRENCY", true));
+            filePatcher.setAIClient(aiClient);
+            filePatcher.setAIPromptWindow(getIntEnv("AI_PROMPT_WINDOW", 0));
+            AIResponseCache aiCache = null;
+            long aiCacheMaxBytes = getIntEnv("AI_CACHE_MAX_MB", 64) * 1024L * 1024L;
+            if (aiCacheMaxBytes > 0) {
+                String aiCacheDir = System.getenv("AI_CACHE_DIR");
+                aiCache = new AIResponseCache(aiCacheDir != null && !aiCacheDir.isEmpty()
+                        ? Paths.get(aiCacheDir)
+                        : git.getRepository().getDirectory().toPath().resolve("pr-porter").resolve("ai-cache"),
+                        aiCacheMaxBytes);
+                filePatcher.setAICache(aiCache);
+            }
+            // Fuzz only drops context lines, so it can never exceed the context the hunks are extracted with
+            int maxFuzz = getIntEnv("PATCH_FUZZ", Math.min(2, hunkContext));
+            if (maxFuzz > hunkContext) {
+                System.out.println("Warning: PATCH_FUZZ=" + maxFuzz + " has no effect beyond DIFF_CONTEXT_LINES=" + hunkContext +
+                        ", hunks only carry that many context lines to drop");
+            }
+            filePatcher.setMaxFuzz(maxFuzz);
+            filePatcher.setIgnoreWhitespace(getBooleanEnv("PATCH_IGNORE_WHITESPACE"));
+            filePatcher.setLargeFileThreshold(getIntEnv("LARGE_FILE_THRESHOLD_MB", 64) * 1024L * 1024L);
+            filePatcher.setBatchCommit("per-pr".equalsIgnoreCase(System.getenv("COMMIT_MODE")));
             ReportGenerator reportGenerator = new ReportGenerator();
 
-            // Analyze PR changes
-            System.out.println("Starting PR analysis...");
-            List<ChangedFile> changedFiles = prAnalyzer.analyzePR(sourceBranch, targetBranch, prNumber);
-            System.out.println("Found " + changedFiles.size() + " changed files in PR #" + prNumber);
-
-            // Create and checkout port branch once for the PR
             String portBranchName = targetBranch + "-port-" + prNumber;
-            System.out.println("Creating port branch: " + portBranchName);
-            git.checkout()
-               .setCreateBranch(true)
-               .setName(portBranchName)
-               .call();
-            
-            // Process each changed file
+            boolean inCoreCommit = getBooleanEnv("IN_CORE_COMMIT");
+            InCoreCommitter inCoreCommitter;
+            List<ChangedFile> changedFiles;
             int successCount = 0;
             int skippedCount = 0;
-            for (ChangedFile file : changedFiles) {
-                System.out.println("\n----------------------------------------");
-                System.out.println("Processing file: " + file.getPath());
-                System.out.println("----------------------------------------");
+            if (getBooleanEnv("PIPELINE_MODE")) {
+                // Create the port branch up front, files are patched while the analysis is still running
+                inCoreCommitter = createPortBranch(portBranchName, inCoreCommit, filePatcher);
+
+                PortPipeline pipeline = new PortPipeline(prAnalyzer, conflictChecker, filePatcher,
+                        getIntEnv("PIPELINE_QUEUE_SIZE", 64),
+                        getIntEnv("PIPELINE_WORKERS", Runtime.getRuntime().availableProcessors()));
+                changedFiles = pipeline.run(sourceBranch, targetBranch, prNumber);
+                System.out.println("Found " + changedFiles.size() + " changed files in PR #" + prNumber);
+            } else {
+                // Analyze PR changes
+                System.out.println("Starting PR analysis...");
+                changedFiles = prAnalyzer.analyzePR(sourceBranch, targetBranch, prNumber);
+                System.out.println("Found " + changedFiles.size() + " changed files in PR #" + prNumber);
+                if (mergeCheck) {
+                    conflictChecker.precheck(changedFiles, targetBranch,
+                            getIntEnv("CONFLICT_CHECK_THREADS", Runtime.getRuntime().availableProcessors()));
+                }
+
+                // Create and checkout port branch once for the PR
+                inCoreCommitter = createPortBranch(portBranchName, inCoreCommit, filePatcher);
+            
+                // Process each changed file. Hunks that apply locally are patched right away; files waiting on
+                // the AI fallback complete in the background. Files are committed in order as soon as every file
+                // before them is, so only the patches queued behind a file still waiting on the AI are held.
+                Map<ChangedFile, CompletableFuture<FilePatcher.PreparedPatch>> preparedPatches = new LinkedHashMap<>();
+                for (ChangedFile file : changedFiles) {
+                    System.out.println("\n----------------------------------------");
+                    System.out.println("Processing file: " + file.getPath());
+                    System.out.println("----------------------------------------");
                 
-                try {
-                    // Check for conflicts
-                    System.out.println("Checking for conflicts...");
-                    if (conflictChecker.hasConflict(file, targetBranch)) {
-                        System.out.println("❌ Conflict detected in target branch");
-                        file.setStatus(FileStatus.SKIPPED);
-                        file.setReason("Conflict detected in target branch");
-                        skippedCount++;
-                        continue;
-                    }
-                    System.out.println("✅ No conflicts found");
+                    try {
+                        // Check for conflicts
+                        System.out.println("Checking for conflicts...");
+                        if (conflictChecker.hasConflict(file, targetBranch)) {
+                            System.out.println("❌ Conflict detected in target branch");
+                            file.setStatus(FileStatus.SKIPPED);
+                            if (file.getReason() == null) {
+                                file.setReason("Conflict detected in target branch");
+                            }
+                            continue;
+                        }
+                        System.out.println("✅ No conflicts found");
 
-                    // Apply changes
-                    System.out.println("Applying changes to target branch...");
-                    filePatcher.applyChanges(file, targetBranch, prNumber, sourceBranch);
-                    file.setStatus(FileStatus.PORTED);
-                    System.out.println("✅ Changes applied successfully");
-                    successCount++;
+                        // Apply changes
+                        System.out.println("Applying changes to target branch...");
+                        preparedPatches.put(file, filePatcher.preparePatchAsync(file, sourceBranch));
                     
-                } catch (Exception e) {
-                    System.out.println("❌ Error processing file: " + e.getMessage());
-                    file.setStatus(FileStatus.SKIPPED);
-                    file.setReason("Error: " + e.getMessage());
+                    } catch (Exception e) {
+                        System.out.println("❌ Error processing file: " + e.getMessage());
+                        file.setStatus(FileStatus.SKIPPED);
+                        file.setReason("Error: " + e.getMessage());
+                    }
+                    commitPreparedPatches(preparedPatches, false, filePatcher, prNumber);
+                }
+                commitPreparedPatches(preparedPatches, true, filePatcher, prNumber);
+            }
+            for (ChangedFile file : changedFiles) {
+                if (file.getStatus() == FileStatus.SKIPPED) {
                     skippedCount++;
+                } else {
+                    successCount++;
+                }
+            }
+
+            if (filePatcher.commitBatch(prNumber)) {
+                System.out.println("Committed all ported files of PR #" + prNumber + " in one commit");
+            }
+            if (inCoreCommitter != null) {
+                inCoreCommitter.finish();
+                System.out.println("Wrote " + inCoreCommitter.getCommitsMade() + " in-core commits to " + portBranchName);
+                if (getBooleanEnv("IN_CORE_CHECKOUT", true)) {
+                    System.out.println("Checking out port branch: " + portBranchName);
+                    git.checkout().setName(portBranchName).call();
+                }
+            }
+
+            aiClient.close();
+            if (aiClient.getRequestsSent() > 0) {
+                System.out.println("AI requests sent: " + aiClient.getRequestsSent() +
+                                   ", peak in flight: " + aiClient.getPeakInFlight() + "/" + aiClient.getMaxInFlight() +
+                                   ", final concurrency limit: " + aiClient.getConcurrencyLimit());
+            }
+            CircuitBreaker circuitBreaker = aiClient.getCircuitBreaker();
+            if (circuitBreaker.getTimesOpened() > 0) {
+                String circuitSummary = "AI circuit breaker opened " + circuitBreaker.getTimesOpened() + " time(s), " +
+                                        circuitBreaker.getRejected() + " AI request(s) skipped for manual review";
+                System.out.println(circuitSummary);
+                reportGenerator.addSummaryLine(circuitSummary);
+            }
+
+            if (aiCache != null && aiCache.getHits() + aiCache.getMisses() > 0) {
+                String cacheSummary = "AI response cache: " + aiCache.getHits() + " hits, " + aiCache.getMisses() + " misses";
+                System.out.println(cacheSummary);
+                reportGenerator.addSummaryLine(cacheSummary);
+            }
+
+            int diffedFiles = 0;
+            for (ChangedFile file : changedFiles) {
+                if (file.hasDiffHunksLoaded()) {
+                    diffedFiles++;
                 }
             }
 
@@ -233,6 +348,9 @@ public class Main {
             System.out.println("Total files in PR: " + changedFiles.size());
             System.out.println("Successfully ported: " + successCount);
             System.out.println("Skipped: " + skippedCount);
+            System.out.println("Files diffed: " + diffedFiles + " of " + changedFiles.size());
+            System.out.println("Fetches made: " + fetchCoordinator.getFetchesMade() +
+                               ", skipped (still fresh): " + fetchCoordinator.getFetchesSkipped());
             System.out.println("----------------------------------------");
 
             // Generate report
@@ -250,14 +368,56 @@ public class Main {
         }
     }
 
-    private static void resetRepository(Git git, CredentialsProvider credentialsProvider) throws GitAPIException, IOException {
+    // Commits the prepared patches from the head of the queue in PR order. Unless waitForAll is set it stops at
+    // the first file whose patch is not ready yet, so later files keep their place in the order.
+    private static void commitPreparedPatches(Map<ChangedFile, CompletableFuture<FilePatcher.PreparedPatch>> preparedPatches,
+                                              boolean waitForAll, FilePatcher filePatcher, String prNumber) {
+        Iterator<Map.Entry<ChangedFile, CompletableFuture<FilePatcher.PreparedPatch>>> iterator = preparedPatches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ChangedFile, CompletableFuture<FilePatcher.PreparedPatch>> entry = iterator.next();
+            if (!waitForAll && !entry.getValue().isDone()) {
+                return;
+            }
+            iterator.remove();
+            ChangedFile file = entry.getKey();
+            try {
+                filePatcher.commitPatch(entry.getValue().join(), prNumber);
+                if (file.getStatus() == FileStatus.SKIPPED) {
+                    System.out.println("❌ " + file.getPath() + ": " + file.getReason());
+                } else {
+                    System.out.println("✅ " + file.getPath() + ": " + file.getStatus());
+                }
+            } catch (Exception e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                System.out.println("❌ Error processing file " + file.getPath() + ": " + cause.getMessage());
+                file.setStatus(FileStatus.SKIPPED);
+                file.setReason("Error: " + cause.getMessage());
+            }
+        }
+    }
+
+    // Create the port branch at the target branch. In in-core mode the worktree stays on the target branch
+    // and the patcher commits to the new branch through the returned committer, otherwise null is returned.
+    private static InCoreCommitter createPortBranch(String portBranchName, boolean inCoreCommit, FilePatcher filePatcher)
+            throws GitAPIException, IOException {
+        System.out.println("Creating port branch: " + portBranchName);
+        if (!inCoreCommit) {
+            git.checkout()
+               .setCreateBranch(true)
+               .setName(portBranchName)
+               .call();
+            return null;
+        }
+        git.branchCreate().setName(portBranchName).call();
+        InCoreCommitter inCoreCommitter = new InCoreCommitter(git.getRepository(), portBranchName);
+        filePatcher.setInCoreCommitter(inCoreCommitter);
+        return inCoreCommitter;
+    }
+
+    private static void resetRepository(Git git, FetchCoordinator fetchCoordinator) throws GitAPIException, IOException {
         // Fetch all remote changes
         System.out.println("Fetching latest changes from remote...");
-        git.fetch()
-           .setCredentialsProvider(credentialsProvider)
-           .setForceUpdate(true)
-           .setTagOpt(org.eclipse.jgit.transport.TagOpt.FETCH_TAGS)
-           .call();
+        fetchCoordinator.fetch(org.eclipse.jgit.lib.Constants.DEFAULT_REMOTE_NAME, true);
 
         // Reset to origin/develop
         System.out.println("Resetting to origin/develop...");
@@ -315,6 +475,31 @@ public class Main {
         System.out.println("Repository reset complete");
     }
 
+    private static boolean getBooleanEnv(String name) {
+        return getBooleanEnv(name, false);
+    }
+
+    private static boolean getBooleanEnv(String name, boolean defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return "true".equalsIgnoreCase(value) || "1".equals(value);
+    }
+
+    private static int getIntEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Warning: Ignoring invalid " + name + "=" + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     private static boolean isValidGitRepository(File directory) {
         if (!directory.exists() || !directory.isDirectory()) {
             return false;
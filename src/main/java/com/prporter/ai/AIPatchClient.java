@@ -0,0 +1,353 @@
+package com.prporter.ai;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * One OkHttp client shared by every AI patch request of a run, so connections and dispatcher threads are
+ * reused. Requests are asynchronous: complete() returns a future right away, at most maxInFlight requests
+ * are on the wire, and a token bucket paces how fast new ones start. Retries are scheduled instead of
+ * sleeping, and a 429's Retry-After pauses the whole client rather than just the one request.
+ * A circuit breaker shared by all requests skips the AI entirely while the backend keeps failing, and the
+ * number of requests on the wire adapts between 1 and maxInFlight to the latency and 429s observed.
+ */
+public class AIPatchClient {
+    public static final String DEFAULT_ENDPOINT = "https://api.openai.com/v1/chat/completions";
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final String MODEL = "gpt-3.5-turbo";
+    private static final int MAX_TOKENS = 2048;
+    private static final int MAX_RETRIES = 5;
+    private static final long BASE_DELAY_MS = 1000;
+
+    private final String endpoint;
+    private final String apiKey;
+    private final int maxInFlight;
+    private final OkHttpClient client;
+    private final TokenBucket rateLimiter;
+    private final ScheduledExecutorService scheduler;
+    private final Gson gson = new Gson();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger requestsSent = new AtomicInteger();
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private volatile CircuitBreaker circuitBreaker = new CircuitBreaker(5, 30_000);
+    private volatile boolean adaptiveConcurrency = true;
+    private volatile boolean streaming;
+
+    public AIPatchClient(String apiKey, int maxInFlight, double requestsPerSecond) {
+        this(DEFAULT_ENDPOINT, apiKey, maxInFlight, requestsPerSecond);
+    }
+
+    public AIPatchClient(String endpoint, String apiKey, int maxInFlight, double requestsPerSecond) {
+        this.endpoint = endpoint;
+        this.apiKey = apiKey;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(this.maxInFlight);
+        dispatcher.setMaxRequestsPerHost(this.maxInFlight);
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(this.maxInFlight, 5, TimeUnit.MINUTES))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(120, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .addInterceptor(chain -> {
+                    // Runs on a dispatcher thread, so this counts requests actually on the wire
+                    peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    long start = System.nanoTime();
+                    try {
+                        Response response = chain.proceed(chain.request());
+                        adjustConcurrency(response.code(), (System.nanoTime() - start) / 1_000_000);
+                        return response;
+                    } catch (IOException e) {
+                        adjustConcurrency(-1, 0);
+                        throw e;
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                })
+                .build();
+        this.concurrencyLimit = new AdaptiveConcurrencyLimit(this.maxInFlight, limit -> {
+            dispatcher.setMaxRequests(limit);
+            dispatcher.setMaxRequestsPerHost(limit);
+        });
+        this.rateLimiter = new TokenBucket(requestsPerSecond, this.maxInFlight);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-patch-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Breaker shared by all requests of this client, replacing the default of 5 failures and a 30 second cooldown
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    // Keep the concurrency fixed at maxInFlight instead of adapting it
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    // Ask for server-sent events and read the reply as it is generated instead of after it is complete
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isEmpty();
+    }
+
+    // Everything besides the prompt that shapes a reply, part of the AI response cache key
+    public String getModelParameters() {
+        return "model=" + MODEL + " max_tokens=" + MAX_TOKENS;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    // Current adaptive concurrency limit
+    public int getConcurrencyLimit() {
+        return adaptiveConcurrency ? concurrencyLimit.getLimit() : maxInFlight;
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public int getRequestsSent() {
+        return requestsSent.get();
+    }
+
+    // Send the prompt and complete with the model's reply, or null if no usable reply was obtained
+    public CompletableFuture<String> complete(String prompt) {
+        return complete(prompt, line -> true);
+    }
+
+    // As complete(prompt), checking each line of the reply as soon as it arrives when streaming. A line the
+    // check rejects cancels the request and completes the future with null.
+    public CompletableFuture<String> complete(String prompt, Predicate<String> lineCheck) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (!isConfigured()) {
+            System.out.println("[AI PATCH] No OpenAI API key found in environment variable OPENAI_API_KEY.");
+            result.complete(null);
+            return result;
+        }
+        schedule(new PendingRequest(buildRequest(prompt), lineCheck, result), 0);
+        return result;
+    }
+
+    // Stop the dispatcher and drop pooled connections so the JVM can exit without waiting for idle threads
+    public void close() {
+        scheduler.shutdownNow();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private Request buildRequest(String prompt) {
+        JsonObject body = new JsonObject();
+        body.addProperty("model", MODEL);
+        JsonArray messages = new JsonArray();
+        JsonObject userMsg = new JsonObject();
+        userMsg.addProperty("role", "user");
+        userMsg.addProperty("content", prompt);
+        messages.add(userMsg);
+        body.add("messages", messages);
+        body.addProperty("max_tokens", MAX_TOKENS);
+        if (streaming) {
+            body.addProperty("stream", true);
+        }
+        return new Request.Builder()
+                .url(endpoint)
+                .post(RequestBody.create(gson.toJson(body), JSON))
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .addHeader("Content-Type", "application/json")
+                .build();
+    }
+
+    // Start the attempt once the rate limiter allows it
+    private void schedule(PendingRequest pending, int attempt) {
+        if (!circuitBreaker.allowRequest()) {
+            System.out.println("[AI PATCH] Circuit open, skipping AI and flagging for manual review.");
+            pending.result.complete(null);
+            return;
+        }
+        long delayMs = rateLimiter.reserve();
+        if (delayMs <= 0) {
+            send(pending, attempt);
+        } else {
+            scheduler.schedule(() -> send(pending, attempt), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(PendingRequest pending, int attempt) {
+        requestsSent.incrementAndGet();
+        client.newCall(pending.request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                System.out.println("[AI PATCH] Exception calling OpenAI API: " + e.getMessage());
+                circuitBreaker.recordFailure();
+                retry(pending, attempt, backoff(attempt), "Network error");
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    handle(pending, attempt, r);
+                } catch (Exception e) {
+                    System.out.println("[AI PATCH] Exception reading OpenAI API response: " + e.getMessage());
+                    circuitBreaker.recordFailure();
+                    pending.result.complete(null);
+                }
+            }
+        });
+    }
+
+    private void handle(PendingRequest pending, int attempt, Response response) throws IOException {
+        if (response.code() == 429) {
+            long delayMs = backoff(attempt);
+            Long retryAfterMs = parseRetryAfter(response.header("Retry-After"));
+            if (retryAfterMs != null) {
+                delayMs = retryAfterMs;
+                System.out.println("[AI PATCH] Using server-suggested retry delay: " + (delayMs / 1000) + " seconds");
+            }
+            // Every request waits out the server's limit, not only the one that hit it
+            rateLimiter.pause(delayMs);
+            circuitBreaker.recordRateLimited();
+            retry(pending, attempt, 0, "OpenAI API rate limit exceeded (429)");
+            return;
+        }
+
+        if (!response.isSuccessful()) {
+            System.out.println("[AI PATCH] OpenAI API call failed with status " + response.code() + ": " + response.message());
+            if (response.code() >= 500) {
+                circuitBreaker.recordFailure();
+                retry(pending, attempt, backoff(attempt), "Server error");
+            } else {
+                // An oversized prompt or a rejected key fails this request only
+                circuitBreaker.recordClientError();
+                pending.result.complete(null);
+            }
+            return;
+        }
+
+        String content;
+        String contentType = response.header("Content-Type", "");
+        if (contentType.startsWith("text/event-stream")) {
+            content = ChatCompletionReader.readStream(response.body().source(), pending.lineCheck);
+            if (content == null) {
+                System.out.println("[AI PATCH] Reply rejected while streaming, request cancelled.");
+            }
+        } else {
+            content = ChatCompletionReader.readContent(response.body().charStream());
+            if (content != null) {
+                for (String line : content.split("\n")) {
+                    if (!pending.lineCheck.test(line)) {
+                        content = null;
+                        break;
+                    }
+                }
+            }
+        }
+        circuitBreaker.recordSuccess();
+        pending.result.complete(stripCodeFence(content));
+    }
+
+    // Feed the AIMD limit from one attempt: status -1 for a network failure
+    private void adjustConcurrency(int status, long latencyMs) {
+        if (!adaptiveConcurrency) {
+            return;
+        }
+        if (status == 429) {
+            concurrencyLimit.onRateLimited();
+        } else if (status < 0 || status >= 500) {
+            concurrencyLimit.onOverload();
+        } else if (status < 300) {
+            concurrencyLimit.onSuccess(latencyMs);
+        }
+    }
+
+    private void retry(PendingRequest pending, int attempt, long delayMs, String reason) {
+        if (attempt + 1 >= MAX_RETRIES) {
+            System.out.println("[AI PATCH] OpenAI API call failed after " + MAX_RETRIES + " retries due to rate limiting or persistent errors.");
+            pending.result.complete(null);
+            return;
+        }
+        System.out.println("[AI PATCH] " + reason + ". Retrying in " + (delayMs / 1000) + " seconds (" + (attempt + 1) + "/" + MAX_RETRIES + ")...");
+        try {
+            scheduler.schedule(() -> schedule(pending, attempt + 1), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // Client was closed while the request was pending
+            pending.result.complete(null);
+        }
+    }
+
+    private static long backoff(int attempt) {
+        return BASE_DELAY_MS << attempt;
+    }
+
+    // Retry-After is either delta-seconds or an HTTP date
+    private static Long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return null;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            // Not a number, try the date form
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // The model often wraps its reply in a code fence
+    private static String stripCodeFence(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.replaceAll("^```[a-zA-Z]*\\n|```$", "").trim();
+    }
+
+    private static class PendingRequest {
+        private final Request request;
+        private final Predicate<String> lineCheck;
+        private final CompletableFuture<String> result;
+
+        PendingRequest(Request request, Predicate<String> lineCheck, CompletableFuture<String> result) {
+            this.request = request;
+            this.lineCheck = lineCheck;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.prporter.ai;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of AI replies, one file per reply named by the SHA-256 of everything that determines it.
+ * Entries are kept in least-recently-used order, which survives restarts through the files' modification
+ * times; once the directory grows past maxBytes the least recently used replies are deleted.
+ */
+public class AIResponseCache {
+    private final Path directory;
+    private final long maxBytes;
+    // Key to entry size, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private int hits;
+    private int misses;
+
+    public AIResponseCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    // Content address for a reply: SHA-256 over the parts, each terminated by a NUL so parts cannot run together
+    public static String key(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public synchronized String get(String key) {
+        if (!entries.containsKey(key)) {
+            misses++;
+            return null;
+        }
+        Path path = directory.resolve(key);
+        try {
+            String value = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            entries.get(key);
+            hits++;
+            return value;
+        } catch (IOException e) {
+            // Deleted or unreadable behind our back, treat as a miss
+            Long size = entries.remove(key);
+            totalBytes -= size == null ? 0 : size;
+            misses++;
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path tempPath = directory.resolve(key + ".tmp");
+            Files.write(tempPath, bytes);
+            Files.move(tempPath, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not write AI response cache entry: " + e.getMessage());
+            return;
+        }
+        Long previous = entries.put(key, (long) bytes.length);
+        totalBytes += bytes.length - (previous == null ? 0 : previous);
+        evict();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                System.out.println("⚠️  Could not evict AI response cache entry: " + e.getMessage());
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path) && !path.getFileName().toString().endsWith(".tmp")) {
+                    files.add(path);
+                }
+            }
+            files.sort(Comparator.comparing(AIResponseCache::lastModified));
+            for (Path path : files) {
+                long size = Files.size(path);
+                entries.put(path.getFileName().toString(), size);
+                totalBytes += size;
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not read AI response cache, starting empty: " + e.getMessage());
+            entries.clear();
+            totalBytes = 0;
+        }
+        evict();
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
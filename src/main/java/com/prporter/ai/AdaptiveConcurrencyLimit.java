@@ -0,0 +1,80 @@
+package com.prporter.ai;
+
+import java.util.function.IntConsumer;
+
+/**
+ * AIMD limit on concurrent AI requests, between 1 and a fixed ceiling. Every fast success adds about one
+ * request per limit's worth of completions; a 429, a server error, a network failure or a short-term latency
+ * well above the long-term average halves the limit. Comparing two averages rather than against the fastest
+ * reply keeps naturally slow long completions from reading as congestion. The limit is halved at most once
+ * per smoothed round trip, so one burst of bad responses counts as a single congestion signal.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double SHORT_SMOOTHING = 0.2;
+    private static final double LONG_SMOOTHING = 0.02;
+
+    private final int ceiling;
+    private final IntConsumer onChange;
+    private double limit;
+    private double smoothedLatencyMs;
+    private double longTermLatencyMs;
+    private long lastDecrease;
+    private int decreases;
+
+    // onChange receives the new whole-number limit whenever it changes
+    public AdaptiveConcurrencyLimit(int ceiling, IntConsumer onChange) {
+        this.ceiling = Math.max(1, ceiling);
+        this.onChange = onChange;
+        this.limit = this.ceiling;
+    }
+
+    public synchronized void onSuccess(long latencyMs) {
+        smoothedLatencyMs = smoothedLatencyMs == 0 ? latencyMs : smoothedLatencyMs + SHORT_SMOOTHING * (latencyMs - smoothedLatencyMs);
+        longTermLatencyMs = longTermLatencyMs == 0 ? latencyMs : longTermLatencyMs + LONG_SMOOTHING * (latencyMs - longTermLatencyMs);
+        if (smoothedLatencyMs > LATENCY_TOLERANCE * longTermLatencyMs) {
+            decrease("latency " + Math.round(smoothedLatencyMs) + " ms");
+        } else {
+            update(Math.min(ceiling, limit + 1 / limit));
+        }
+    }
+
+    public synchronized void onRateLimited() {
+        decrease("rate limited");
+    }
+
+    public synchronized void onOverload() {
+        decrease("server errors");
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getDecreases() {
+        return decreases;
+    }
+
+    private void decrease(String reason) {
+        long now = System.currentTimeMillis();
+        if (now - lastDecrease < Math.max(1, smoothedLatencyMs)) {
+            return;
+        }
+        lastDecrease = now;
+        decreases++;
+        int before = (int) limit;
+        update(Math.max(1, limit * DECREASE_FACTOR));
+        if ((int) limit != before) {
+            System.out.println("[AI PATCH] Reducing AI concurrency to " + (int) limit + " (" + reason + ")");
+        }
+    }
+
+    private void update(double newLimit) {
+        int before = (int) limit;
+        limit = newLimit;
+        if ((int) limit != before) {
+            onChange.accept((int) limit);
+        }
+    }
+}
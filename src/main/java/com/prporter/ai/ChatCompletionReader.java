@@ -0,0 +1,112 @@
+package com.prporter.ai;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.function.Predicate;
+
+/**
+ * Pulls the reply text out of chat completion responses with Gson's streaming JsonReader, without
+ * building the response as a string or a tree. A plain response yields choices[0].message.content; a
+ * server-sent-events stream is read event by event and its choices[0].delta.content pieces are handed
+ * on as complete lines while the rest of the reply is still arriving.
+ */
+public class ChatCompletionReader {
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE = "[DONE]";
+
+    private ChatCompletionReader() {
+    }
+
+    // choices[0].message.content of a non-streamed response, null if absent
+    public static String readContent(Reader body) throws IOException {
+        try (JsonReader reader = new JsonReader(body)) {
+            return readChoiceText(reader, "message");
+        }
+    }
+
+    // Reads a streamed response to the end, feeding each completed line to lineCheck. Returns the whole
+    // reply, or null if lineCheck rejected a line, in which case the rest of the stream is not read.
+    public static String readStream(BufferedSource source, Predicate<String> lineCheck) throws IOException {
+        StringBuilder reply = new StringBuilder();
+        int checkedUpTo = 0;
+        String event;
+        while ((event = source.readUtf8Line()) != null) {
+            if (!event.startsWith(DATA_PREFIX)) {
+                // Blank separators, comments, event names and ids carry no content
+                continue;
+            }
+            String data = event.substring(DATA_PREFIX.length()).trim();
+            if (data.equals(DONE)) {
+                break;
+            }
+            String delta;
+            try (JsonReader reader = new JsonReader(new StringReader(data))) {
+                delta = readChoiceText(reader, "delta");
+            }
+            if (delta == null) {
+                continue;
+            }
+            reply.append(delta);
+            int newline;
+            while ((newline = reply.indexOf("\n", checkedUpTo)) != -1) {
+                if (!lineCheck.test(reply.substring(checkedUpTo, newline))) {
+                    return null;
+                }
+                checkedUpTo = newline + 1;
+            }
+        }
+        if (checkedUpTo < reply.length() && !lineCheck.test(reply.substring(checkedUpTo))) {
+            return null;
+        }
+        return reply.toString();
+    }
+
+    // Text of choices[0].<field>.content, skipping everything else in the object
+    private static String readChoiceText(JsonReader reader, String field) throws IOException {
+        String text = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("choices") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    text = readFieldContent(reader, field);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return text;
+    }
+
+    private static String readFieldContent(JsonReader reader, String field) throws IOException {
+        String text = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("content") && reader.peek() == JsonToken.STRING) {
+                        text = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return text;
+    }
+}
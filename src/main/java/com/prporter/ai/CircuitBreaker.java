@@ -0,0 +1,83 @@
+package com.prporter.ai;
+
+/**
+ * Stops calling a backend that keeps failing. After failureThreshold consecutive failures the circuit
+ * opens and every request is refused until the cooldown has passed; then a single probe request is let
+ * through, closing the circuit if it succeeds and reopening it for another cooldown if it fails.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long cooldownMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private int timesOpened;
+    private int rejected;
+
+    public CircuitBreaker(int failureThreshold, long cooldownMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.cooldownMillis = Math.max(0, cooldownMillis);
+    }
+
+    // Whether a request may be sent now; while half open only the one probe is allowed
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= cooldownMillis) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !probeInFlight)) {
+            probeInFlight = state == State.HALF_OPEN;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            System.out.println("[AI PATCH] Probe request succeeded, circuit closed.");
+            state = State.CLOSED;
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            timesOpened++;
+            System.out.println("[AI PATCH] " + consecutiveFailures + " consecutive failures, circuit open for " +
+                    (cooldownMillis / 1000) + " seconds. Hunks go straight to manual review meanwhile.");
+        }
+    }
+
+    // A 429 says nothing about the backend's health, except that a probe did not get through
+    public synchronized void recordRateLimited() {
+        if (state == State.HALF_OPEN) {
+            recordFailure();
+        }
+    }
+
+    // Any other 4xx describes the request, not the backend; it only frees the probe slot for the next request
+    public synchronized void recordClientError() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getTimesOpened() {
+        return timesOpened;
+    }
+
+    public synchronized int getRejected() {
+        return rejected;
+    }
+}
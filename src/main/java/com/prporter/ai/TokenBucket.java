@@ -0,0 +1,56 @@
+package com.prporter.ai;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Request rate limiter. Tokens refill continuously up to the burst capacity; a caller that finds the
+ * bucket empty reserves a future token and is told how long to wait for it, so nobody blocks a thread.
+ * A server-requested pause (Retry-After) moves the refill past its end, so reservations made during the
+ * pause are spread out after it at the normal rate.
+ */
+public class TokenBucket {
+    // A rate of zero or less would never refill, it is raised to one token every 1000 seconds
+    static final double MIN_TOKENS_PER_SECOND = 0.001;
+
+    private final LongSupplier nanoClock;
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    // Time up to which tokens have been credited, in the future while a pause is in effect
+    private long lastRefill;
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        this(tokensPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, int burst, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.tokensPerNano = Math.max(MIN_TOKENS_PER_SECOND, tokensPerSecond) / 1_000_000_000d;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    // Take one token and return the delay in milliseconds before it may be used
+    public synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        if (now - lastRefill > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+        tokens -= 1;
+        // Credited tokens are available from lastRefill on, a missing one takes 1 / rate after that
+        double waitNanos = (lastRefill - now) + (tokens >= 0 ? 0 : -tokens / tokensPerNano);
+        return waitNanos <= 0 ? 0 : (long) Math.ceil(waitNanos / 1_000_000d);
+    }
+
+    // Hold back all reservations for the given time, e.g. after a 429 with Retry-After
+    public synchronized void pause(long millis) {
+        long until = nanoClock.getAsLong() + millis * 1_000_000;
+        // Tokens that accrue during the pause would otherwise release a burst the moment it ends
+        tokens = Math.min(tokens, 0);
+        if (until - lastRefill > 0) {
+            lastRefill = until;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.prporter.analyzer;
+
+import com.prporter.model.ChangedFile;
+import com.prporter.model.HunkBuffer;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds DiffHunks straight from the blobs' RawText and EditList. The lines that end up in a hunk are
+ * copied as raw bytes into the file's HunkBuffer, so no text is produced for the diff as a whole. Hunk
+ * boundaries and @@ ranges match what DiffFormatter emits for the same context size.
+ *
+ * An extractor wraps a single ObjectReader and must not be shared between threads.
+ */
+public class HunkExtractor {
+    // Text of the HunkBuffer.MARKER line DiffFormatter writes after a last line without a terminator
+    private static final byte[] NO_NEWLINE = " No newline at end of file".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectReader reader;
+    private final DiffAlgorithm diffAlgorithm;
+    private final int context;
+    private final int bigFileThreshold;
+
+    public HunkExtractor(Repository repository, ObjectReader reader, int context) {
+        this.reader = reader;
+        this.context = context;
+        this.diffAlgorithm = DiffAlgorithm.getAlgorithm(repository.getConfig().getEnum(
+                ConfigConstants.CONFIG_DIFF_SECTION, null,
+                ConfigConstants.CONFIG_KEY_ALGORITHM,
+                DiffAlgorithm.SupportedAlgorithm.HISTOGRAM));
+        this.bigFileThreshold = PackConfig.DEFAULT_BIG_FILE_THRESHOLD;
+    }
+
+    public List<ChangedFile.DiffHunk> extract(DiffEntry diff) throws IOException {
+        return extract(diff.getOldId().toObjectId(), diff.getNewId().toObjectId());
+    }
+
+    // Hunks turning one blob into the other, either id may be the zero id of an added or deleted side
+    public List<ChangedFile.DiffHunk> extract(AnyObjectId oldBlobId, AnyObjectId newBlobId) throws IOException {
+        RawText oldText = loadText(oldBlobId);
+        RawText newText = loadText(newBlobId);
+        if (oldText == null || newText == null) {
+            // Binary or too large to diff line by line, DiffFormatter emits no hunks for these either
+            return Collections.emptyList();
+        }
+        return toHunks(diff(oldText, newText), oldText, newText);
+    }
+
+    public EditList diff(RawText oldText, RawText newText) {
+        return diffAlgorithm.diff(RawTextComparator.DEFAULT, oldText, newText);
+    }
+
+    // Returns null for binary or oversized blobs, an empty text for the zero id of an added/deleted side
+    public RawText loadText(AnyObjectId blobId) throws IOException {
+        if (ObjectId.zeroId().equals(blobId)) {
+            return RawText.EMPTY_TEXT;
+        }
+        byte[] content;
+        try {
+            content = reader.open(blobId, Constants.OBJ_BLOB).getCachedBytes(bigFileThreshold);
+        } catch (LargeObjectException e) {
+            return null;
+        }
+        if (RawText.isBinary(content)) {
+            return null;
+        }
+        return new RawText(content);
+    }
+
+    // Same check git uses, on the start of the blob only; the zero id of an added/deleted side is not binary
+    public boolean isBinary(AnyObjectId blobId) throws IOException {
+        if (ObjectId.zeroId().equals(blobId)) {
+            return false;
+        }
+        try (InputStream in = reader.open(blobId, Constants.OBJ_BLOB).openStream()) {
+            return RawText.isBinary(in);
+        }
+    }
+
+    public List<ChangedFile.DiffHunk> toHunks(EditList edits, RawText oldText, RawText newText) {
+        // All hunks of the file go into one buffer, copied from the blobs' bytes without decoding
+        HunkBuffer.Builder buffer = new HunkBuffer.Builder();
+        int[] startLines = new int[edits.size()];
+        int[] endLines = new int[edits.size()];
+        int hunkCount = 0;
+        for (int curIdx = 0; curIdx < edits.size();) {
+            Edit curEdit = edits.get(curIdx);
+            int endIdx = findCombinedEnd(edits, curIdx);
+            Edit endEdit = edits.get(endIdx);
+
+            int aCur = Math.max(0, curEdit.getBeginA() - context);
+            int bCur = Math.max(0, curEdit.getBeginB() - context);
+            int aEnd = Math.min(oldText.size(), endEdit.getEndA() + context);
+            int bEnd = Math.min(newText.size(), endEdit.getEndB() + context);
+
+            StringBuilder header = new StringBuilder();
+            header.append("@@ -");
+            appendRange(header, aCur + 1, aEnd - aCur);
+            header.append(" +");
+            appendRange(header, bCur + 1, bEnd - bCur);
+            header.append(" @@");
+            buffer.startHunk(header.toString());
+
+            int startLine = aEnd - aCur == 0 ? aCur : aCur + 1;
+            startLines[hunkCount] = startLine;
+            endLines[hunkCount++] = startLine + (aEnd - aCur) - 1;
+
+            while (aCur < aEnd || bCur < bEnd) {
+                if (aCur < curEdit.getBeginA() || endIdx + 1 < curIdx) {
+                    addLine(buffer, HunkBuffer.CONTEXT, oldText, aCur);
+                    addNoNewlineMarker(buffer, oldText, aCur);
+                    aCur++;
+                    bCur++;
+                } else if (aCur < curEdit.getEndA()) {
+                    addLine(buffer, HunkBuffer.REMOVED, oldText, aCur);
+                    addNoNewlineMarker(buffer, oldText, aCur);
+                    aCur++;
+                } else if (bCur < curEdit.getEndB()) {
+                    addLine(buffer, HunkBuffer.ADDED, newText, bCur);
+                    addNoNewlineMarker(buffer, newText, bCur);
+                    bCur++;
+                }
+
+                if (curEdit.getEndA() <= aCur && curEdit.getEndB() <= bCur && ++curIdx < edits.size()) {
+                    curEdit = edits.get(curIdx);
+                }
+            }
+        }
+
+        HunkBuffer built = buffer.build();
+        List<ChangedFile.DiffHunk> hunks = new ArrayList<>(hunkCount);
+        for (int h = 0; h < hunkCount; h++) {
+            hunks.add(new ChangedFile.DiffHunk(startLines[h], endLines[h], built, h));
+        }
+        return hunks;
+    }
+
+    private static void addLine(HunkBuffer.Builder buffer, char kind, RawText text, int line) {
+        ByteBuffer raw = text.getRawString(line);
+        buffer.addLine(kind, raw.array(), raw.arrayOffset() + raw.position(), raw.arrayOffset() + raw.limit());
+    }
+
+    // Same condition as DiffFormatter: the line is the text's last and has no terminator
+    private static void addNoNewlineMarker(HunkBuffer.Builder buffer, RawText text, int line) {
+        if (line + 1 == text.size() && text.isMissingNewlineAtEnd()) {
+            buffer.addLine(HunkBuffer.MARKER, NO_NEWLINE, 0, NO_NEWLINE.length);
+        }
+    }
+
+    private int findCombinedEnd(List<Edit> edits, int i) {
+        int end = i;
+        while (end + 1 < edits.size()
+                && (edits.get(end + 1).getBeginA() - edits.get(end).getEndA() <= 2 * context
+                    || edits.get(end + 1).getBeginB() - edits.get(end).getEndB() <= 2 * context)) {
+            end++;
+        }
+        return end;
+    }
+
+    // Same range notation as DiffFormatter: "start,count", ",1" omitted, empty ranges point at the previous line
+    private static void appendRange(StringBuilder out, int begin, int count) {
+        if (count == 0) {
+            out.append(begin - 1).append(",0");
+        } else if (count == 1) {
+            out.append(begin);
+        } else {
+            out.append(begin).append(',').append(count);
+        }
+    }
+}
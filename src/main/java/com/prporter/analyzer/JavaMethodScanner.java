@@ -0,0 +1,529 @@
+package com.prporter.analyzer;
+
+import com.prporter.model.MethodIndex;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the method and constructor declarations of a Java source file in a single pass over its bytes.
+ * Comments, string, text block and char literals are skipped, so braces inside them are not counted. Every
+ * brace opens a block that is a type body, a method body or anything else; a name followed by a parameter
+ * list only counts as a declaration directly inside a type body, so calls, lambdas and control statements are
+ * never taken for methods. Annotations, generics and signatures spread over several lines are handled, as are
+ * anonymous, local and nested classes and enum constant bodies.
+ *
+ * A scanner is used once, through scan().
+ */
+public class JavaMethodScanner {
+    private static final int TYPE = 0;
+    private static final int METHOD = 1;
+    private static final int OTHER = 2;
+
+    private static final int NO_ANNOTATION = 0;
+    private static final int ANNOTATION_NAME_EXPECTED = 1;
+    private static final int ANNOTATION_NAME_READ = 2;
+
+    private static final Set<String> NOT_METHOD_NAMES = new HashSet<>(Arrays.asList(
+            "if", "for", "while", "switch", "catch", "synchronized", "return", "new", "throw", "try",
+            "super", "this", "assert", "yield"));
+    private static final Set<String> MODIFIERS = new HashSet<>(Arrays.asList(
+            "public", "protected", "private", "static", "final", "abstract", "strictfp", "sealed"));
+    private static final String[] PUNCTUATION = new String[128];
+    // By byte value; bytes of multi-byte UTF-8 characters count as identifier characters
+    private static final boolean[] IDENTIFIER_START = new boolean[256];
+    private static final boolean[] IDENTIFIER_PART = new boolean[256];
+    static {
+        for (int c = 0; c < 256; c++) {
+            if (c < PUNCTUATION.length) {
+                PUNCTUATION[c] = String.valueOf((char) c);
+            }
+            IDENTIFIER_START[c] = c >= 0x80 || Character.isJavaIdentifierStart(c);
+            IDENTIFIER_PART[c] = c >= 0x80 || Character.isJavaIdentifierPart(c);
+        }
+    }
+    // Stands in for string, char and number literals, only their position matters
+    private static final String LITERAL = "\"\"";
+
+    private final byte[] text;
+    private final int end;
+    private int pos;
+    private int line = 1;
+    private final List<MethodIndex.MethodRange> methods = new ArrayList<>();
+    // Open addressing, at most half full
+    private String[] identifiers = new String[256];
+    private int identifierCount;
+    private final Deque<Block> enclosing = new ArrayDeque<>();
+    // The file itself is scanned like a block that is neither a type nor a method body
+    private Block current = new Block(OTHER, false);
+
+    private JavaMethodScanner(byte[] text, int start, int end) {
+        this.text = text;
+        this.pos = start;
+        this.end = end;
+    }
+
+    public static MethodIndex scan(byte[] text) {
+        return scan(text, 0, text.length);
+    }
+
+    public static MethodIndex scan(byte[] text, int start, int end) {
+        JavaMethodScanner scanner = new JavaMethodScanner(text, start, end);
+        scanner.run();
+        return new MethodIndex(scanner.methods);
+    }
+
+    private void run() {
+        while (pos < end) {
+            int c = text[pos] & 0xff;
+            int next = pos + 1 < end ? text[pos + 1] & 0xff : -1;
+            if (c == '\n') {
+                line++;
+                pos++;
+            } else if (c <= ' ') {
+                pos++;
+            } else if (c == '/' && next == '/') {
+                while (pos < end && text[pos] != '\n') {
+                    pos++;
+                }
+            } else if (c == '/' && next == '*') {
+                skipBlockComment();
+            } else if (c == '"') {
+                int tokenLine = line;
+                skipString();
+                token(LITERAL, tokenLine, false);
+            } else if (c == '\'') {
+                int tokenLine = line;
+                skipQuoted('\'');
+                token(LITERAL, tokenLine, false);
+            } else if (IDENTIFIER_START[c]) {
+                int start = pos;
+                boolean ascii = true;
+                while (pos < end && IDENTIFIER_PART[text[pos] & 0xff]) {
+                    ascii &= text[pos] >= 0;
+                    pos++;
+                }
+                token(ascii ? identifier(start, pos) : RawParseUtils.decode(text, start, pos), line, true);
+            } else if (c >= '0' && c <= '9') {
+                while (pos < end && (IDENTIFIER_PART[text[pos] & 0xff] || text[pos] == '.')) {
+                    pos++;
+                }
+                token(LITERAL, line, false);
+            } else {
+                pos++;
+                token(PUNCTUATION[c], line, false);
+            }
+        }
+    }
+
+    // Source repeats the same few names over and over, each distinct ASCII identifier becomes one String
+    private String identifier(int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int mask = identifiers.length - 1;
+        for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+            String known = identifiers[slot];
+            if (known == null) {
+                String identifier = new String(text, start, end - start, StandardCharsets.ISO_8859_1);
+                identifiers[slot] = identifier;
+                if (++identifierCount * 2 > identifiers.length) {
+                    rehashIdentifiers();
+                }
+                return identifier;
+            }
+            if (known.length() == end - start && known.hashCode() == hash && sameChars(known, start)) {
+                return known;
+            }
+        }
+    }
+
+    private boolean sameChars(String known, int start) {
+        for (int i = 0; i < known.length(); i++) {
+            if (known.charAt(i) != text[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehashIdentifiers() {
+        String[] old = identifiers;
+        identifiers = new String[old.length * 2];
+        int mask = identifiers.length - 1;
+        for (String identifier : old) {
+            if (identifier != null) {
+                int hash = identifier.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (identifiers[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                identifiers[slot] = identifier;
+            }
+        }
+    }
+
+    private void skipBlockComment() {
+        pos += 2;
+        while (pos < end && !(text[pos] == '*' && pos + 1 < end && text[pos + 1] == '/')) {
+            if (text[pos] == '\n') {
+                line++;
+            }
+            pos++;
+        }
+        pos = Math.min(end, pos + 2);
+    }
+
+    private void skipString() {
+        if (pos + 2 < end && text[pos + 1] == '"' && text[pos + 2] == '"') {
+            // Text block, runs to the next unescaped """
+            pos += 3;
+            while (pos < end && !(text[pos] == '"' && pos + 2 < end && text[pos + 1] == '"' && text[pos + 2] == '"')) {
+                if (text[pos] == '\\') {
+                    pos++;
+                } else if (text[pos] == '\n') {
+                    line++;
+                }
+                pos++;
+            }
+            pos = Math.min(end, pos + 3);
+            return;
+        }
+        skipQuoted('"');
+    }
+
+    // A string or char literal ends at its closing quote, or at the end of the line if it is unterminated
+    private void skipQuoted(char quote) {
+        pos++;
+        while (pos < end && text[pos] != quote && text[pos] != '\n') {
+            if (text[pos] == '\\' && pos + 1 < end && text[pos + 1] != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        if (pos < end && text[pos] == quote) {
+            pos++;
+        }
+    }
+
+    private void token(String token, int tokenLine, boolean identifier) {
+        Block block = current;
+        boolean afterNewArguments = block.afterNewArguments;
+        block.afterNewArguments = false;
+        char c = token.charAt(0);
+        if (!identifier && c == '{') {
+            openBlock(block, afterNewArguments);
+            return;
+        }
+        if (!identifier && c == '}') {
+            closeBlock(tokenLine);
+            return;
+        }
+        if (block.startLine < 0 && c != ';') {
+            block.startLine = tokenLine;
+        }
+
+        // An annotation name is '@' ident ('.' ident)*, a '(' right after it opens the annotation's arguments
+        boolean annotationArguments = false;
+        if (block.annotation == ANNOTATION_NAME_EXPECTED && identifier) {
+            block.annotation = ANNOTATION_NAME_READ;
+            if (token.equals("interface")) {
+                block.typeKeyword = true;
+                block.annotation = NO_ANNOTATION;
+            }
+            block.previous = token;
+            block.previousIdentifier = true;
+            captureParameter(block, token);
+            return;
+        } else if (block.annotation == ANNOTATION_NAME_READ && c == '.' && !identifier) {
+            block.annotation = ANNOTATION_NAME_EXPECTED;
+            captureParameter(block, token);
+            return;
+        } else if (block.annotation == ANNOTATION_NAME_READ && c == '(' && !identifier) {
+            annotationArguments = true;
+        }
+        block.annotation = NO_ANNOTATION;
+
+        if (identifier) {
+            if (token.equals("class") || token.equals("interface") || token.equals("enum")) {
+                if (!".".equals(block.previous)) {
+                    block.typeKeyword = true;
+                    block.enumKeyword |= token.equals("enum");
+                }
+            } else if (token.equals("record")) {
+                // Only a keyword in front of a type name, "record" is a legal method or variable name otherwise
+                if (block.previous == null || MODIFIERS.contains(block.previous) || ")".equals(block.previous)
+                        || "}".equals(block.previous)) {
+                    block.typeKeyword = true;
+                }
+            } else if (token.equals("new")) {
+                block.newExpression = true;
+            }
+        } else {
+            switch (c) {
+                case ';':
+                    if (block.parenDepth == 0) {
+                        if (block.kind == TYPE && !block.enumConstants && block.parametersClosed && !block.assignment
+                                && !block.typeKeyword) {
+                            // A method without a body: abstract, interface or annotation element
+                            methods.add(new MethodIndex.MethodRange(block.name, signature(block.name, block.parameters),
+                                    block.startLine, tokenLine));
+                        }
+                        block.enumConstants = false;
+                        block.reset();
+                        return;
+                    }
+                    break;
+                case ',':
+                    if (block.enumConstants && block.parenDepth == 0) {
+                        block.reset();
+                        return;
+                    }
+                    break;
+                case '@':
+                    block.annotation = ANNOTATION_NAME_EXPECTED;
+                    break;
+                case '=':
+                    if (block.parenDepth == 0) {
+                        block.assignment = true;
+                    }
+                    break;
+                case '[':
+                    block.newExpression = false;
+                    break;
+                case '(':
+                    openParen(block, annotationArguments);
+                    return;
+                case ')':
+                    closeParen(block);
+                    return;
+                default:
+                    break;
+            }
+        }
+        captureParameter(block, token);
+        block.previous = token;
+        block.previousIdentifier = identifier;
+    }
+
+    private void openParen(Block block, boolean annotationArguments) {
+        boolean newArguments = block.newExpression;
+        block.newExpression = false;
+        if (block.parenDepth == 0 && !annotationArguments && !newArguments && block.name == null
+                && !block.assignment && block.previousIdentifier && !NOT_METHOD_NAMES.contains(block.previous)) {
+            // Possibly a declaration, whether it is one is decided at the '{' or ';' that ends it
+            block.name = block.previous;
+            block.inParameters = true;
+        } else {
+            captureParameter(block, "(");
+        }
+        if (block.parenDepth < 64) {
+            block.newArguments = newArguments ? block.newArguments | 1L << block.parenDepth
+                    : block.newArguments & ~(1L << block.parenDepth);
+        }
+        block.parenDepth++;
+        block.previous = "(";
+        block.previousIdentifier = false;
+    }
+
+    private void closeParen(Block block) {
+        if (block.parenDepth > 0) {
+            block.parenDepth--;
+            block.afterNewArguments = block.parenDepth < 64 && (block.newArguments >>> block.parenDepth & 1) != 0;
+        }
+        if (block.inParameters && block.parenDepth == 0) {
+            block.inParameters = false;
+            block.parametersClosed = true;
+        } else {
+            captureParameter(block, ")");
+        }
+        block.previous = ")";
+        block.previousIdentifier = false;
+    }
+
+    private static void captureParameter(Block block, String token) {
+        if (block.inParameters) {
+            block.parameters.add(token);
+        }
+    }
+
+    private void openBlock(Block block, boolean afterNewArguments) {
+        int kind;
+        if (block.typeKeyword || afterNewArguments || (block.kind == TYPE && block.enumConstants)) {
+            // Type declaration, anonymous class or enum constant body
+            kind = TYPE;
+        } else if (block.kind == TYPE && block.parametersClosed && !block.assignment && block.parenDepth == 0) {
+            kind = METHOD;
+        } else {
+            kind = OTHER;
+        }
+        Block inner = new Block(kind, kind == TYPE && block.enumKeyword);
+        if (kind == METHOD) {
+            inner.methodName = block.name;
+            inner.methodSignature = signature(block.name, block.parameters);
+            inner.methodStart = block.startLine;
+        }
+        // A brace inside parentheses is a lambda body or an array initializer, the declaration goes on after it
+        if (block.parenDepth == 0) {
+            block.reset();
+        }
+        enclosing.push(block);
+        current = inner;
+    }
+
+    private void closeBlock(int closingLine) {
+        if (enclosing.isEmpty()) {
+            // Unbalanced braces, not Java or not compilable; keep scanning at file level
+            return;
+        }
+        if (current.kind == METHOD) {
+            methods.add(new MethodIndex.MethodRange(current.methodName, current.methodSignature,
+                    current.methodStart, closingLine));
+        }
+        current = enclosing.pop();
+        current.previous = "}";
+        current.previousIdentifier = false;
+    }
+
+    // "name(Type1, Type2)": parameter names, annotations and final are left out, generics and arrays kept
+    private static String signature(String name, List<String> tokens) {
+        StringBuilder signature = new StringBuilder(name).append('(');
+        List<String> parameter = new ArrayList<>();
+        int nesting = 0;
+        boolean first = true;
+        for (int i = 0; i <= tokens.size(); i++) {
+            String token = i < tokens.size() ? tokens.get(i) : null;
+            if (token == null || (nesting == 0 && token.equals(","))) {
+                if (appendParameterType(signature, parameter, first)) {
+                    first = false;
+                }
+                parameter.clear();
+                continue;
+            }
+            if (token.equals("<") || token.equals("(")) {
+                nesting++;
+            } else if (token.equals(">") || token.equals(")")) {
+                nesting--;
+            }
+            parameter.add(token);
+        }
+        return signature.append(')').toString();
+    }
+
+    private static boolean appendParameterType(StringBuilder signature, List<String> tokens, boolean first) {
+        List<String> type = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("@")) {
+                // Skip the annotation's name and its arguments
+                i++;
+                while (i + 2 < tokens.size() && tokens.get(i + 1).equals(".")) {
+                    i += 2;
+                }
+                if (i + 1 < tokens.size() && tokens.get(i + 1).equals("(")) {
+                    int depth = 0;
+                    do {
+                        i++;
+                        if (tokens.get(i).equals("(")) {
+                            depth++;
+                        } else if (tokens.get(i).equals(")")) {
+                            depth--;
+                        }
+                    } while (depth > 0 && i + 1 < tokens.size());
+                }
+            } else if (!token.equals("final")) {
+                type.add(token);
+            }
+        }
+        // "int values[]" declares an array too
+        int dimensions = 0;
+        while (type.size() >= 2 && type.get(type.size() - 1).equals("]") && type.get(type.size() - 2).equals("[")) {
+            type.remove(type.size() - 1);
+            type.remove(type.size() - 1);
+            dimensions++;
+        }
+        if (type.size() >= 2 && isWord(type.get(type.size() - 1))) {
+            type.remove(type.size() - 1);
+        }
+        if (type.isEmpty()) {
+            return false;
+        }
+        if (!first) {
+            signature.append(", ");
+        }
+        String previous = null;
+        for (String token : type) {
+            if (previous != null && isWord(previous) && isWord(token)) {
+                signature.append(' ');
+            }
+            signature.append(token.equals(",") ? ", " : token);
+            previous = token;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            signature.append("[]");
+        }
+        return true;
+    }
+
+    private static boolean isWord(String token) {
+        return token.equals("?") || Character.isJavaIdentifierStart(token.charAt(0)) || token.charAt(0) >= 0x80;
+    }
+
+    // One brace level. Besides its kind it holds the declaration or statement read since the last ';', '{' or '}'
+    private static class Block {
+        final int kind;
+        // Inside an enum body the constants come first, up to the first ';'
+        boolean enumConstants;
+        String methodName;
+        String methodSignature;
+        int methodStart;
+
+        int startLine = -1;
+        boolean typeKeyword;
+        boolean enumKeyword;
+        boolean assignment;
+        String name;
+        boolean inParameters;
+        boolean parametersClosed;
+        final List<String> parameters = new ArrayList<>();
+        int parenDepth;
+        int annotation = NO_ANNOTATION;
+        boolean newExpression;
+        // Bit n: whether the '(' at depth n holds the arguments of a 'new', so a '{' after its ')' is an anonymous class
+        long newArguments;
+        boolean afterNewArguments;
+        String previous;
+        boolean previousIdentifier;
+
+        Block(int kind, boolean enumBody) {
+            this.kind = kind;
+            this.enumConstants = enumBody;
+        }
+
+        void reset() {
+            startLine = -1;
+            typeKeyword = false;
+            enumKeyword = false;
+            assignment = false;
+            name = null;
+            inParameters = false;
+            parametersClosed = false;
+            parameters.clear();
+            parenDepth = 0;
+            annotation = NO_ANNOTATION;
+            newExpression = false;
+            newArguments = 0;
+            afterNewArguments = false;
+            previous = null;
+            previousIdentifier = false;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.prporter.analyzer;
+
+import com.prporter.model.MethodIndex;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Method indexes of source blobs, keyed by blob id. A blob never changes, so its index is built once and shared by
+ * every file, branch and thread that reads the same blob. Beyond maxEntries the least recently used are dropped.
+ */
+public class MethodIndexCache {
+    private final Map<ObjectId, MethodIndex> indexes;
+    private int hits;
+    private int misses;
+
+    public MethodIndexCache(int maxEntries) {
+        this.indexes = new LinkedHashMap<ObjectId, MethodIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, MethodIndex> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Empty index for the zero id, binary blobs and blobs too large to load in one piece
+    public MethodIndex get(AnyObjectId blobId, ObjectReader reader) throws IOException {
+        if (blobId == null || ObjectId.zeroId().equals(blobId)) {
+            return MethodIndex.EMPTY;
+        }
+        synchronized (this) {
+            MethodIndex index = indexes.get(blobId);
+            if (index != null) {
+                hits++;
+                return index;
+            }
+            misses++;
+        }
+        // Scanned outside the lock, two threads missing on the same blob at once both scan it
+        MethodIndex index;
+        try {
+            byte[] content = reader.open(blobId, Constants.OBJ_BLOB).getCachedBytes(PackConfig.DEFAULT_BIG_FILE_THRESHOLD);
+            index = RawText.isBinary(content) ? MethodIndex.EMPTY : JavaMethodScanner.scan(content);
+        } catch (LargeObjectException e) {
+            index = MethodIndex.EMPTY;
+        }
+        synchronized (this) {
+            indexes.put(blobId.copy(), index);
+        }
+        return index;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
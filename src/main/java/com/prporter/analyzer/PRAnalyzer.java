@@ -1,43 +1,91 @@
 package com.prporter.analyzer;
 
+import com.prporter.git.FetchCoordinator;
 import com.prporter.model.ChangedFile;
+import com.prporter.model.HunkSource;
+import com.prporter.model.MethodIndex;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
-import org.eclipse.jgit.transport.CredentialsProvider;
-import java.io.ByteArrayOutputStream;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RepositoryState;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
-public class PRAnalyzer {
+public class PRAnalyzer implements HunkSource {
     private final Git git;
     private final Repository repository;
-    private final CredentialsProvider credentialsProvider;
+    private final FetchCoordinator fetchCoordinator;
+    private final PRMergeIndex mergeIndex;
+    private final MethodIndexCache methodIndexCache = new MethodIndexCache(256);
+    // extractMethodFromBranch results by commit, path and method name; a commit's content never changes
+    private final Map<String, String> extractedMethods = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > 256;
+        }
+    };
+    // Hunks without context lines by default, the patcher anchors on the removed lines themselves
+    private int hunkContext = 0;
+    private int analysisThreads = 1;
     private static final String SAFETY_MESSAGE = "\n⚠️  SAFETY NOTICE: This utility is READ-ONLY until you explicitly push changes.\n" +
                                                "   No remote branches will be modified or deleted.\n" +
                                                "   All changes are local until you choose to push them.\n";
 
-    public PRAnalyzer(Git git, CredentialsProvider credentialsProvider) {
+    public PRAnalyzer(Git git, FetchCoordinator fetchCoordinator) {
         this.git = git;
         this.repository = git.getRepository();
-        this.credentialsProvider = credentialsProvider;
+        this.fetchCoordinator = fetchCoordinator;
+        this.mergeIndex = new PRMergeIndex(repository);
         System.out.println(SAFETY_MESSAGE);
     }
 
+    // Number of worker threads that diff the changed files and index their methods during the analysis. With 1
+    // nothing is diffed until a later step asks for it; with more, every file is loaded up front on the pool.
+    public void setAnalysisThreads(int analysisThreads) {
+        this.analysisThreads = Math.max(1, analysisThreads);
+    }
+
+    // Number of unchanged lines kept around each change, giving the patcher context to anchor and fuzz on
+    public void setHunkContext(int hunkContext) {
+        this.hunkContext = Math.max(0, hunkContext);
+    }
+
     public List<ChangedFile> analyzePR(String sourceBranch, String targetBranch, String prNumber) throws GitAPIException, IOException {
-        List<ChangedFile> changedFiles = new ArrayList<>();
+        Map<Integer, ChangedFile> changedFiles = new ConcurrentSkipListMap<>();
+        analyzePR(sourceBranch, targetBranch, prNumber, (changedFile, index) -> changedFiles.put(index, changedFile));
+        return new ArrayList<>(changedFiles.values());
+    }
+
+    // Streaming variant: every file is handed to the sink as soon as it has been analyzed, together with its
+    // position in the merge diff. The sink is called on the calling thread. Returns the number of changed files.
+    public int analyzePR(String sourceBranch, String targetBranch, String prNumber, ObjIntConsumer<ChangedFile> sink) throws GitAPIException, IOException {
+        int changedFileCount;
 
         // Verify we're in a clean state
         System.out.println("\n🔍 Verifying repository state...");
@@ -50,11 +98,7 @@ public class PRAnalyzer {
         // Fetch all remote branches (read-only operation)
         System.out.println("\n📥 Fetching remote branches (read-only operation)...");
         try {
-            git.fetch()
-               .setCredentialsProvider(credentialsProvider)
-               .setForceUpdate(true)
-               .setRefSpecs("+refs/heads/*:refs/remotes/origin/*")
-               .call();
+            fetchCoordinator.fetch("+refs/heads/*:refs/remotes/origin/*");
             System.out.println("✅ Remote branches fetched successfully");
             System.out.println("   Note: This only updates local references to remote branches");
         } catch (GitAPIException e) {
@@ -142,19 +186,7 @@ public class PRAnalyzer {
         try (ObjectReader reader = repository.newObjectReader()) {
             // Get the merge commit for PR #123
             System.out.println("Finding merge commit for PR #" + prNumber + "...");
-            Iterable<RevCommit> mergeCommits = git.log()
-                .add(sourceId)
-                .call();
-
-            RevCommit prMergeCommit = null;
-            for (RevCommit commit : mergeCommits) {
-                String message = commit.getFullMessage();
-                if (message.contains("Merge pull request #" + prNumber) || 
-                    message.contains("Merged PR #" + prNumber)) {
-                    prMergeCommit = commit;
-                    break;
-                }
-            }
+            RevCommit prMergeCommit = findMergeCommit(sourceId, prNumber);
 
             if (prMergeCommit == null) {
                 throw new JGitInternalException("Could not find merge commit for PR #" + prNumber);
@@ -177,32 +209,20 @@ public class PRAnalyzer {
                     .setOldTree(baseTree)
                     .setNewTree(mergeTree)
                     .call();
+            // Pair up deletes and adds of the same content, so a moved file is ported as a rename
+            RenameDetector renameDetector = new RenameDetector(repository);
+            renameDetector.addAll(diffs);
+            diffs = renameDetector.compute(reader, NullProgressMonitor.INSTANCE);
 
             System.out.println("Found " + diffs.size() + " files changed in merge commit");
 
-            // Process each changed file
-            for (DiffEntry diff : diffs) {
-                String filePath = diff.getChangeType() == DiffEntry.ChangeType.DELETE ? 
-                    diff.getOldPath() : diff.getNewPath();
-                
-                System.out.println("\nProcessing file: " + filePath);
-                System.out.println("Change type: " + diff.getChangeType());
-                
-                ChangedFile changedFile = new ChangedFile(filePath);
-                if (diff.getChangeType() == DiffEntry.ChangeType.MODIFY || 
-                    diff.getChangeType() == DiffEntry.ChangeType.ADD) {
-                    List<ChangedFile.DiffHunk> diffHunks = extractDiffHunks(diff, prMergeCommit.getParent(0), prMergeCommit);
-                    if (!diffHunks.isEmpty()) {
-                        changedFile.setDiffHunks(diffHunks);
-                        System.out.println("Found " + diffHunks.size() + " diff hunks");
-                    }
-                }
-                changedFiles.add(changedFile);
-            }
+            // Process each changed file, in parallel when more than one analysis thread is configured
+            analyzeDiffs(diffs, sink);
+            changedFileCount = diffs.size();
 
-            System.out.println("\nTotal files changed in merge commit: " + changedFiles.size());
+            System.out.println("\nTotal files changed in merge commit: " + changedFileCount);
             
-            if (changedFiles.isEmpty()) {
+            if (changedFileCount == 0) {
                 System.out.println("WARNING: No files were detected in the merge commit");
                 System.out.println("Please verify:");
                 System.out.println("1. PR #" + prNumber + " exists and has been merged");
@@ -211,109 +231,242 @@ public class PRAnalyzer {
             }
         }
 
-        return changedFiles;
+        return changedFileCount;
     }
 
-    private List<ChangedFile.DiffHunk> extractDiffHunks(DiffEntry diff, RevCommit oldCommit, RevCommit newCommit) throws IOException {
-        List<ChangedFile.DiffHunk> diffHunks = new ArrayList<>();
-        
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             DiffFormatter diffFormatter = new DiffFormatter(out)) {
-            diffFormatter.setRepository(repository);
-            diffFormatter.setContext(0); // Get hunks without any context lines initially, we add them back.
-            
-            // Get the raw diff content
-            diffFormatter.format(diff);
-            String diffContent = out.toString();
-            String[] lines = diffContent.split("\n");
-            
-            int currentStartLine = 0;
-            int currentEndLine = 0;
-            StringBuilder currentContent = new StringBuilder();
-            boolean inHunk = false;
-            
-            for (String line : lines) {
-                if (line.startsWith("@@")) {
-                    // Save previous hunk if exists
-                    if (inHunk && currentContent.length() > 0) {
-                        diffHunks.add(new ChangedFile.DiffHunk(currentStartLine, currentEndLine, currentContent.toString()));
-                    }
-                    
-                    currentContent = new StringBuilder();
-                    inHunk = true;
-                    
-                    // Parse the hunk header for the original file's line numbers
-                    String[] parts = line.split(" ");
-                    if (parts.length > 1) {
-                        String oldRange = parts[1]; // e.g., -58,7
-                        String[] lineNumbers = oldRange.substring(1).split(",");
-                        if (lineNumbers.length > 0) {
-                            currentStartLine = Integer.parseInt(lineNumbers[0]);
-                            if (lineNumbers.length > 1) {
-                                currentEndLine = currentStartLine + Integer.parseInt(lineNumbers[1]) - 1;
-                            } else {
-                                currentEndLine = currentStartLine;
+    // With one thread the files go to the sink unloaded and their hunks are diffed on first use. Otherwise each
+    // worker owns an ObjectReader and HunkExtractor and loads the hunks and method changes of the files it claims;
+    // the calling thread hands them to the sink in diff order. At most a few files per worker are held ahead of
+    // the sink, so a slow consumer holds the workers back instead of letting loaded files pile up.
+    private void analyzeDiffs(List<DiffEntry> diffs, ObjIntConsumer<ChangedFile> sink) throws IOException {
+        int workers = Math.min(analysisThreads, diffs.size());
+        if (workers <= 1) {
+            for (int i = 0; i < diffs.size(); i++) {
+                sink.accept(analyzeDiff(diffs.get(i)), i);
+            }
+            return;
+        }
+
+        System.out.println("Analyzing files with " + workers + " threads...");
+        List<CompletableFuture<ChangedFile>> results = new ArrayList<>(diffs.size());
+        for (int i = 0; i < diffs.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        Semaphore ahead = new Semaphore(workers * 4);
+        AtomicInteger nextIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int w = 0; w < workers; w++) {
+                executor.submit(() -> {
+                    try (ObjectReader reader = repository.newObjectReader()) {
+                        HunkExtractor hunkExtractor = new HunkExtractor(repository, reader, hunkContext);
+                        while (true) {
+                            ahead.acquire();
+                            int i = nextIndex.getAndIncrement();
+                            if (i >= diffs.size()) {
+                                return;
+                            }
+                            try {
+                                results.get(i).complete(preload(analyzeDiff(diffs.get(i)), hunkExtractor, reader));
+                            } catch (Throwable t) {
+                                // Reported by the calling thread, which would otherwise wait for this file forever
+                                results.get(i).completeExceptionally(t);
                             }
                         }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
                     }
-                    currentContent.append(line).append("\n");
-                } else if (inHunk) {
-                    // Store all lines within a hunk (context, added, removed)
-                    currentContent.append(line).append("\n");
-                }
+                });
             }
-            
-            // Add the last hunk
-            if (inHunk && currentContent.length() > 0) {
-                diffHunks.add(new ChangedFile.DiffHunk(currentStartLine, currentEndLine, currentContent.toString()));
+            for (int i = 0; i < diffs.size(); i++) {
+                ChangedFile file = results.get(i).get();
+                ahead.release();
+                sink.accept(file, i);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JGitInternalException("Interrupted while analyzing changed files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new JGitInternalException("Failed to analyze changed files: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
-        
-        return diffHunks;
     }
 
-    // Extract the full method code from a file in a specific branch by method name
-    public String extractMethodFromBranch(String filePath, String methodName, String branch) throws IOException, GitAPIException {
-        // Checkout the branch
-        String currentBranch = repository.getBranch();
-        if (!currentBranch.equals(branch)) {
-            git.checkout().setName(branch).call();
-        }
-        // Read the file
-        Path absPath = repository.getWorkTree().toPath().resolve(filePath);
-        List<String> lines = Files.readAllLines(absPath);
-        // Find method start
-        int start = -1, end = -1;
-        for (int i = 0; i < lines.size(); i++) {
-            if (lines.get(i).contains(methodName + "(") && lines.get(i).matches(".*\\b(public|private|protected|static|final)\\s+\\w+\\s+" + methodName + "\\s*\\(.*\\)\\s*\\{")) {
-                start = i;
-                break;
+    // Diffs the file and indexes both sides' methods with the worker's reader, so later steps find them loaded
+    private ChangedFile preload(ChangedFile file, HunkExtractor hunkExtractor, ObjectReader reader) throws IOException {
+        file.setDiffHunks(loadHunks(file, hunkExtractor));
+        if (!file.getDiffHunks().isEmpty()) {
+            methodIndexCache.get(file.getOldBlobId(), reader);
+            methodIndexCache.get(file.getNewBlobId(), reader);
+            file.getMethodChanges();
+        }
+        return file;
+    }
+
+    private ChangedFile analyzeDiff(DiffEntry diff) {
+        String filePath = diff.getChangeType() == DiffEntry.ChangeType.DELETE ? 
+            diff.getOldPath() : diff.getNewPath();
+
+        ChangedFile changedFile = new ChangedFile(filePath);
+        changedFile.setOldBlobId(diff.getOldId().toObjectId());
+        changedFile.setNewBlobId(diff.getNewId().toObjectId());
+        changedFile.setChangeType(diff.getChangeType());
+        if (diff.getChangeType() == DiffEntry.ChangeType.RENAME || diff.getChangeType() == DiffEntry.ChangeType.COPY) {
+            changedFile.setOldPath(diff.getOldPath());
+        }
+        if (diff.getChangeType() != DiffEntry.ChangeType.DELETE) {
+            changedFile.setNewMode(diff.getNewMode());
+        }
+        StringBuilder log = new StringBuilder();
+        log.append("\nProcessing file: ").append(filePath);
+        log.append("\nChange type: ").append(diff.getChangeType());
+        if (!changedFile.getOldPath().equals(filePath)) {
+            log.append(" from ").append(changedFile.getOldPath());
+        }
+        // Hunks are only diffed once something asks for them, files skipped before patching never pay for it
+        changedFile.setHunkSource(this);
+        System.out.println(log);
+        return changedFile;
+    }
+
+    // Called from whichever thread first needs a file's hunks, so it opens a reader of its own. Whether the file
+    // is binary is decided from the same blob contents the hunks are diffed from.
+    @Override
+    public List<ChangedFile.DiffHunk> loadHunks(ChangedFile file) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return loadHunks(file, new HunkExtractor(repository, reader, hunkContext));
+        }
+    }
+
+    private List<ChangedFile.DiffHunk> loadHunks(ChangedFile file, HunkExtractor hunkExtractor) throws IOException {
+        if (file.getChangeType() == DiffEntry.ChangeType.DELETE || file.getOldBlobId().equals(file.getNewBlobId())) {
+            file.setBinary(false);
+            return new ArrayList<>();
+        }
+        RawText oldText = hunkExtractor.loadText(file.getOldBlobId());
+        RawText newText = hunkExtractor.loadText(file.getNewBlobId());
+        if (oldText == null || newText == null) {
+            // Binary or too large to diff line by line, only the binary check reads a blob again
+            file.setBinary((oldText == null && hunkExtractor.isBinary(file.getOldBlobId()))
+                    || (newText == null && hunkExtractor.isBinary(file.getNewBlobId())));
+            if (file.isBinary()) {
+                System.out.println("Binary file, no diff hunks: " + file.getPath());
+            }
+            return new ArrayList<>();
+        }
+        file.setBinary(false);
+        return hunkExtractor.toHunks(hunkExtractor.diff(oldText, newText), oldText, newText);
+    }
+
+    @Override
+    public MethodIndex loadMethodIndex(ObjectId blobId) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return methodIndexCache.get(blobId, reader);
+        }
+    }
+
+    private RevCommit findMergeCommit(ObjectId sourceId, String prNumber) throws GitAPIException, IOException {
+        // Bring the index up to date with whatever the last fetch brought in, then look the PR up directly
+        boolean indexTrusted;
+        try {
+            int walked = mergeIndex.update(sourceId);
+            System.out.println("PR merge index updated (" + walked + " new commits walked, " + mergeIndex.size() + " PRs indexed)");
+            indexTrusted = true;
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not update PR merge index: " + e.getMessage());
+            indexTrusted = false;
+        }
+        ObjectId indexedCommit = indexTrusted ? mergeIndex.lookup(prNumber) : null;
+        if (indexedCommit != null) {
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                RevCommit commit = revWalk.parseCommit(indexedCommit);
+                // The index is shared by every branch it has seen, so the hit may be a merge on another branch
+                if (revWalk.isMergedInto(commit, revWalk.parseCommit(sourceId))) {
+                    if (commit.getParentCount() > 0) {
+                        revWalk.parseHeaders(commit.getParent(0));
+                    }
+                    return commit;
+                }
+                System.out.println("Indexed merge commit " + indexedCommit.getName() + " is not on the source branch, searching history...");
+            } catch (MissingObjectException e) {
+                System.out.println("Indexed merge commit " + indexedCommit.getName() + " is no longer available, searching history...");
+            }
+        }
+
+        // Index unavailable, stale or missed: fall back to walking the source branch history
+        System.out.println("Searching source branch history for PR #" + prNumber + "...");
+        Iterable<RevCommit> mergeCommits = git.log()
+            .add(sourceId)
+            .call();
+
+        for (RevCommit commit : mergeCommits) {
+            if (PRMergeIndex.mergesPR(commit.getFullMessage(), prNumber)) {
+                return commit;
             }
         }
-        if (start == -1) return null;
-        // Find method end (matching braces)
-        int braceCount = 0;
-        for (int i = start; i < lines.size(); i++) {
-            braceCount += countChar(lines.get(i), '{');
-            braceCount -= countChar(lines.get(i), '}');
-            if (braceCount == 0) {
-                end = i;
-                break;
+        return null;
+    }
+
+    // Extract the full method code from a file in a specific branch by method name, from its first annotation or
+    // modifier to its closing brace.
+    // The blob is read from the branch's tree in the object database, the worktree and HEAD are never touched,
+    // so lookups are safe to run concurrently.
+    public String extractMethodFromBranch(String filePath, String methodName, String branch) throws IOException {
+        ObjectId commitId = resolveBranchCommit(branch);
+        if (commitId == null) {
+            throw new JGitInternalException("Could not resolve branch: " + branch);
+        }
+        String key = commitId.name() + ":" + filePath + ":" + methodName;
+        synchronized (extractedMethods) {
+            if (extractedMethods.containsKey(key)) {
+                return extractedMethods.get(key);
             }
         }
-        if (end == -1) return null;
-        StringBuilder method = new StringBuilder();
-        for (int i = start; i <= end; i++) {
-            method.append(lines.get(i)).append("\n");
+        String methodText = readMethod(commitId, filePath, methodName);
+        synchronized (extractedMethods) {
+            extractedMethods.put(key, methodText);
+        }
+        return methodText;
+    }
+
+    private String readMethod(ObjectId commitId, String filePath, String methodName) throws IOException {
+        MethodIndex.MethodRange method;
+        RawText text;
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            RevTree tree = revWalk.parseCommit(commitId).getTree();
+            ObjectId blobId;
+            try (TreeWalk treeWalk = TreeWalk.forPath(reader, filePath, tree)) {
+                if (treeWalk == null) return null;
+                blobId = treeWalk.getObjectId(0);
+            }
+            // The blob's method index is cached, only the blob itself is read again to cut the method out
+            method = methodIndexCache.get(blobId, reader).find(methodName);
+            if (method == null) return null;
+            text = new RawText(reader.open(blobId, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE));
         }
-        // Restore original branch if needed
-        if (!currentBranch.equals(branch)) {
-            git.checkout().setName(currentBranch).call();
+        StringBuilder methodText = new StringBuilder();
+        for (int i = method.getStartLine() - 1; i < Math.min(method.getEndLine(), text.size()); i++) {
+            methodText.append(text.getString(i)).append("\n");
         }
-        return method.toString();
+        return methodText.toString();
     }
 
-    private int countChar(String str, char c) {
-        return (int) str.chars().filter(ch -> ch == c).count();
+    private ObjectId resolveBranchCommit(String branch) throws IOException {
+        ObjectId commitId = repository.resolve("refs/heads/" + branch);
+        if (commitId == null) {
+            commitId = repository.resolve("refs/remotes/origin/" + branch);
+        }
+        if (commitId == null) {
+            commitId = repository.resolve(branch);
+        }
+        return commitId;
     }
 } 
\ No newline at end of file
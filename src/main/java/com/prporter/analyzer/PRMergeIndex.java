@@ -0,0 +1,142 @@
+package com.prporter.analyzer;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk index of PR number to merge commit, stored under the repository's .git directory.
+ * The index remembers which commits it has already walked, so an update after a fetch only
+ * parses the commits that are new since the last indexed tip.
+ */
+public class PRMergeIndex {
+    private static final String INDEX_DIR = "pr-porter";
+    private static final String INDEX_FILE = "pr-merge-index";
+    private static final int MAX_TIPS = 32;
+    static final Pattern PR_MESSAGE = Pattern.compile("(?:Merge pull request|Merged PR) #(\\d+)");
+
+    private final Repository repository;
+    private final Path indexPath;
+    private final Map<String, ObjectId> mergeCommits = new HashMap<>();
+    private final Set<ObjectId> indexedTips = new LinkedHashSet<>();
+
+    public PRMergeIndex(Repository repository) {
+        this.repository = repository;
+        this.indexPath = repository.getDirectory().toPath().resolve(INDEX_DIR).resolve(INDEX_FILE);
+        load();
+    }
+
+    public ObjectId lookup(String prNumber) {
+        return mergeCommits.get(prNumber);
+    }
+
+    public int size() {
+        return mergeCommits.size();
+    }
+
+    // True if the commit message records the merge of exactly this PR, so #12 does not match #123
+    static boolean mergesPR(String message, String prNumber) {
+        Matcher matcher = PR_MESSAGE.matcher(message);
+        while (matcher.find()) {
+            if (matcher.group(1).equals(prNumber)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Walk only the commits reachable from tip that no previously indexed tip already covers
+    public int update(AnyObjectId tip) throws IOException {
+        if (indexedTips.contains(tip)) {
+            return 0;
+        }
+
+        Map<String, ObjectId> found = new HashMap<>();
+        int walked = 0;
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.markStart(revWalk.parseCommit(tip));
+            for (ObjectId indexed : indexedTips) {
+                try {
+                    revWalk.markUninteresting(revWalk.parseCommit(indexed));
+                } catch (MissingObjectException e) {
+                    // Tip was garbage collected or rewritten; its commits are re-walked if still reachable
+                }
+            }
+            for (RevCommit commit : revWalk) {
+                walked++;
+                Matcher matcher = PR_MESSAGE.matcher(commit.getFullMessage());
+                while (matcher.find()) {
+                    // Walk is newest first, keep the most recent merge for a PR number
+                    found.putIfAbsent(matcher.group(1), commit.copy());
+                }
+            }
+        }
+
+        mergeCommits.putAll(found);
+        indexedTips.add(tip.copy());
+        while (indexedTips.size() > MAX_TIPS) {
+            indexedTips.remove(indexedTips.iterator().next());
+        }
+        save();
+        return walked;
+    }
+
+    private void load() {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 2 && parts[0].equals("tip") && ObjectId.isId(parts[1])) {
+                    indexedTips.add(ObjectId.fromString(parts[1]));
+                } else if (parts.length == 3 && parts[0].equals("pr") && ObjectId.isId(parts[2])) {
+                    mergeCommits.put(parts[1], ObjectId.fromString(parts[2]));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not read PR merge index, rebuilding: " + e.getMessage());
+            mergeCommits.clear();
+            indexedTips.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        Files.createDirectories(indexPath.getParent());
+        Path tempPath = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        List<String> lines = new ArrayList<>(indexedTips.size() + mergeCommits.size());
+        for (ObjectId tip : indexedTips) {
+            lines.add("tip " + tip.getName());
+        }
+        for (Map.Entry<String, ObjectId> entry : mergeCommits.entrySet()) {
+            lines.add("pr " + entry.getKey() + " " + entry.getValue().getName());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,52 +1,160 @@
 package com.prporter.checker;
 
+import com.prporter.analyzer.HunkExtractor;
+import com.prporter.git.FetchCoordinator;
 import com.prporter.model.ChangedFile;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RawText;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
-import org.eclipse.jgit.transport.CredentialsProvider;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ConflictChecker {
     private final Git git;
     private final Repository repository;
-    private final CredentialsProvider credentialsProvider;
-
-    public ConflictChecker(Git git, CredentialsProvider credentialsProvider) {
+    private final FetchCoordinator fetchCoordinator;
+    private ObjectId targetChangesId;
+    private Map<String, DiffEntry> targetChanges;
+    private final MergeConflictChecker mergeConflictChecker;
+    private boolean mergeCheck;
+    private ObjectId precheckedTargetId;
+    private Map<String, List<ConflictRegion>> precheckedConflicts;
+
+    public ConflictChecker(Git git, FetchCoordinator fetchCoordinator) {
         this.git = git;
         this.repository = git.getRepository();
-        this.credentialsProvider = credentialsProvider;
+        this.fetchCoordinator = fetchCoordinator;
+        this.mergeConflictChecker = new MergeConflictChecker(repository);
     }
 
     public boolean hasConflict(ChangedFile file, String targetBranch) throws GitAPIException, IOException {
-        // Fetch latest changes
+        // Fetch latest changes, skipped while the refs from an earlier fetch are still fresh
         System.out.println("Fetching latest changes for conflict check...");
-        git.fetch()
-           .setCredentialsProvider(credentialsProvider)
-           .setForceUpdate(true)
-           .call();
+        fetchCoordinator.fetch();
 
-        // Get the current HEAD commit and the target branch commit
-        ObjectId headId = repository.resolve("HEAD");
         ObjectId targetId = repository.resolve("refs/remotes/origin/" + targetBranch);
+        if (targetId == null) {
+            throw new JGitInternalException("Could not resolve target branch: " + targetBranch);
+        }
 
-        if (headId == null) {
-            throw new JGitInternalException("Could not resolve HEAD reference");
+        if (mergeCheck) {
+            return hasMergeConflict(file, targetId);
+        }
+
+        // If the file is not changed between HEAD and the target branch, there's no conflict
+        DiffEntry diff = getTargetChanges(targetId).get(file.getPath());
+        if (diff == null) {
+            return false;
+        }
+
+        // Check for overlapping changes in the target branch
+        return checkForOverlappingChanges(diff, file);
+    }
+
+    // Use an in-memory three-way merge of PR base, target and PR head instead of the line range overlap heuristic
+    public void setMergeCheck(boolean mergeCheck) {
+        this.mergeCheck = mergeCheck;
+    }
+
+    // In merge mode, run the three-way merges for all files up front on several threads; hasConflict reuses the results.
+    // The merges only read objects, so they are safe to run concurrently.
+    public void precheck(List<ChangedFile> files, String targetBranch, int threads) throws IOException {
+        if (!mergeCheck || files.isEmpty()) {
+            return;
         }
+        ObjectId targetId = repository.resolve("refs/remotes/origin/" + targetBranch);
         if (targetId == null) {
             throw new JGitInternalException("Could not resolve target branch: " + targetBranch);
         }
+        ObjectId targetTreeId = resolveTree(targetId);
+
+        System.out.println("Running three-way merge checks for " + files.size() + " files with " + threads + " threads...");
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            Map<ChangedFile, Future<List<ConflictRegion>>> futures = new LinkedHashMap<>();
+            for (ChangedFile file : files) {
+                futures.put(file, executor.submit(() -> mergeConflictChecker.findConflicts(file, targetTreeId)));
+            }
+            Map<String, List<ConflictRegion>> results = new HashMap<>();
+            for (Map.Entry<ChangedFile, Future<List<ConflictRegion>>> entry : futures.entrySet()) {
+                try {
+                    results.put(entry.getKey().getPath(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    // Left out of the results, hasConflict repeats the check and reports the error for this file
+                    System.out.println("Warning: Merge check failed for " + entry.getKey().getPath() + ": " + e.getCause().getMessage());
+                }
+            }
+            synchronized (this) {
+                precheckedTargetId = targetId.copy();
+                precheckedConflicts = results;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JGitInternalException("Interrupted while checking for merge conflicts", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean hasMergeConflict(ChangedFile file, ObjectId targetId) throws IOException {
+        List<ConflictRegion> regions = null;
+        synchronized (this) {
+            if (targetId.equals(precheckedTargetId)) {
+                regions = precheckedConflicts.get(file.getPath());
+            }
+        }
+        if (regions == null) {
+            regions = mergeConflictChecker.findConflicts(file, resolveTree(targetId));
+        }
+        if (regions.isEmpty()) {
+            return false;
+        }
+
+        StringBuilder reason = new StringBuilder("Merge conflict with target branch: ");
+        for (int i = 0; i < regions.size(); i++) {
+            if (i > 0) {
+                reason.append("; ");
+            }
+            reason.append(regions.get(i));
+        }
+        file.setReason(reason.toString());
+        System.out.println(reason);
+        return true;
+    }
+
+    private ObjectId resolveTree(ObjectId commitId) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            return revWalk.parseCommit(commitId).getTree().copy();
+        }
+    }
+
+    // The HEAD to target tree diff is computed once per target commit and indexed by path.
+    // HEAD is read when the diff is built; port commits made afterwards only touch files that were already checked.
+    private synchronized Map<String, DiffEntry> getTargetChanges(ObjectId targetId) throws GitAPIException, IOException {
+        if (targetId.equals(targetChangesId)) {
+            return targetChanges;
+        }
+
+        ObjectId headId = repository.resolve("HEAD");
+        if (headId == null) {
+            throw new JGitInternalException("Could not resolve HEAD reference");
+        }
 
         try (RevWalk revWalk = new RevWalk(repository);
              ObjectReader reader = repository.newObjectReader()) {
@@ -66,78 +174,40 @@ public class ConflictChecker {
                     .setNewTree(targetTree)
                     .call();
 
-            // Check if the file exists in the target branch
-            boolean fileExistsInTarget = false;
-            for (DiffEntry diff : diffs) {
-                if (diff.getNewPath().equals(file.getPath())) {
-                    fileExistsInTarget = true;
-                    break;
-                }
-            }
-
-            // If the file doesn't exist in the target branch, there's no conflict
-            if (!fileExistsInTarget) {
-                return false;
-            }
-
-            // Check for overlapping changes in the target branch
+            Map<String, DiffEntry> changesByPath = new HashMap<>();
             for (DiffEntry diff : diffs) {
-                if (diff.getNewPath().equals(file.getPath())) {
-                    return checkForOverlappingChanges(diff, file, headCommit, targetCommit);
-                }
+                changesByPath.put(diff.getNewPath(), diff);
             }
+            targetChanges = changesByPath;
+            targetChangesId = targetId.copy();
         }
-
-        return false;
+        return targetChanges;
     }
 
-    private boolean checkForOverlappingChanges(DiffEntry diff, ChangedFile file, RevCommit headCommit, RevCommit targetCommit) throws IOException {
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             DiffFormatter diffFormatter = new DiffFormatter(out)) {
-            diffFormatter.setRepository(repository);
-            
-            // Get the diff content from the target branch
-            diffFormatter.format(diff);
-            String targetDiffContent = out.toString();
-            
-            // Check if any of the changed lines in the PR overlap with changes in the target branch
-            for (ChangedFile.DiffHunk prHunk : file.getDiffHunks()) {
-                if (hasOverlappingLines(targetDiffContent, prHunk.getStartLine(), prHunk.getEndLine())) {
-                    return true;
-                }
+    private boolean checkForOverlappingChanges(DiffEntry diff, ChangedFile file) throws IOException {
+        if (file.getDiffHunks().isEmpty()) {
+            return false;
+        }
+
+        // Index the target branch's changed line ranges once, then query it for every PR hunk
+        LineRangeIndex targetChanges;
+        try (ObjectReader reader = repository.newObjectReader()) {
+            HunkExtractor hunkExtractor = new HunkExtractor(repository, reader, 0);
+            RawText headText = hunkExtractor.loadText(diff.getOldId().toObjectId());
+            RawText targetText = hunkExtractor.loadText(diff.getNewId().toObjectId());
+            if (headText == null || targetText == null) {
+                // Binary content has no line ranges to overlap with
+                return false;
             }
+            targetChanges = new LineRangeIndex(hunkExtractor.diff(headText, targetText));
         }
-        
-        return false;
-    }
 
-    private boolean hasOverlappingLines(String diffContent, int startLine, int endLine) {
-        String[] lines = diffContent.split("\n");
-        int currentLine = 0;
-        
-        for (String line : lines) {
-            if (line.startsWith("@@")) {
-                // Parse the hunk header to get the starting line number
-                String[] parts = line.split(" ");
-                if (parts.length >= 2) {
-                    String[] lineNumbers = parts[1].split(",");
-                    if (lineNumbers.length >= 2) {
-                        currentLine = Integer.parseInt(lineNumbers[0].substring(1));
-                    }
-                }
-            } else if (line.startsWith("+") || line.startsWith("-")) {
-                // Check if this line overlaps with the PR changes
-                if (currentLine >= startLine && currentLine <= endLine) {
-                    return true;
-                }
-                if (!line.startsWith("-")) {
-                    currentLine++;
-                }
-            } else {
-                currentLine++;
+        // Check if any of the changed lines in the PR overlap with changes in the target branch
+        for (ChangedFile.DiffHunk prHunk : file.getDiffHunks()) {
+            if (targetChanges.overlaps(prHunk.getStartLine(), Math.max(prHunk.getStartLine(), prHunk.getEndLine()))) {
+                return true;
             }
         }
-        
         return false;
     }
-} 
\ No newline at end of file
+}
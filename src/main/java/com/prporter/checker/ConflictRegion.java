@@ -0,0 +1,65 @@
+package com.prporter.checker;
+
+/**
+ * A region where the target branch and the PR changed the same lines differently.
+ * Lines are 1-based; an empty side (start > end) means that side deleted the lines.
+ */
+public class ConflictRegion {
+    private final int targetStartLine;
+    private final int targetEndLine;
+    private final int prStartLine;
+    private final int prEndLine;
+    private final boolean binary;
+
+    public ConflictRegion(int targetStartLine, int targetEndLine, int prStartLine, int prEndLine) {
+        this(targetStartLine, targetEndLine, prStartLine, prEndLine, false);
+    }
+
+    private ConflictRegion(int targetStartLine, int targetEndLine, int prStartLine, int prEndLine, boolean binary) {
+        this.targetStartLine = targetStartLine;
+        this.targetEndLine = targetEndLine;
+        this.prStartLine = prStartLine;
+        this.prEndLine = prEndLine;
+        this.binary = binary;
+    }
+
+    // Binary content changed differently on both sides, the whole file conflicts
+    public static ConflictRegion binary() {
+        return new ConflictRegion(0, -1, 0, -1, true);
+    }
+
+    public int getTargetStartLine() {
+        return targetStartLine;
+    }
+
+    public int getTargetEndLine() {
+        return targetEndLine;
+    }
+
+    public int getPrStartLine() {
+        return prStartLine;
+    }
+
+    public int getPrEndLine() {
+        return prEndLine;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public String toString() {
+        if (binary) {
+            return "binary content changed on both sides";
+        }
+        return "target " + describe(targetStartLine, targetEndLine) + " vs PR " + describe(prStartLine, prEndLine);
+    }
+
+    private static String describe(int start, int end) {
+        if (start > end) {
+            return "deleted before line " + start;
+        }
+        return start == end ? "line " + start : "lines " + start + "-" + end;
+    }
+}
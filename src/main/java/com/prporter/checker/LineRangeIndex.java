@@ -0,0 +1,50 @@
+package com.prporter.checker;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+
+/**
+ * Lines changed on one side of an EditList, answering "does [startLine, endLine] touch a change"
+ * with a binary search. Edits in an EditList are sorted and never overlap, so ordering the ranges
+ * by start also orders them by end and a sorted array does the job of an interval tree.
+ */
+public class LineRangeIndex {
+    // 1-based inclusive ranges in old-side line numbers
+    private final int[] starts;
+    private final int[] ends;
+
+    public LineRangeIndex(EditList edits) {
+        this.starts = new int[edits.size()];
+        this.ends = new int[edits.size()];
+        for (int i = 0; i < edits.size(); i++) {
+            Edit edit = edits.get(i);
+            if (edit.getBeginA() == edit.getEndA()) {
+                // Pure insertion between two lines touches both neighbours
+                starts[i] = edit.getBeginA();
+                ends[i] = edit.getBeginA() + 1;
+            } else {
+                starts[i] = edit.getBeginA() + 1;
+                ends[i] = edit.getEndA();
+            }
+        }
+    }
+
+    public boolean overlaps(int startLine, int endLine) {
+        // First range that does not end before startLine
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < startLine) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < ends.length && starts[low] <= endLine;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+}
@@ -0,0 +1,92 @@
+package com.prporter.checker;
+
+import com.prporter.analyzer.HunkExtractor;
+import com.prporter.model.ChangedFile;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeAlgorithm;
+import org.eclipse.jgit.merge.MergeChunk;
+import org.eclipse.jgit.merge.MergeResult;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exact conflict check: a three-way merge of the PR's base blob, the target branch blob and the
+ * PR's result blob, run in memory. Nothing touches the DirCache or the worktree, and every call
+ * uses its own ObjectReader, so files can be checked from several threads at once.
+ */
+public class MergeConflictChecker {
+    private static final int OURS = 1;
+    private static final int THEIRS = 2;
+
+    private final Repository repository;
+
+    public MergeConflictChecker(Repository repository) {
+        this.repository = repository;
+    }
+
+    public List<ConflictRegion> findConflicts(ChangedFile file, AnyObjectId targetTreeId) throws IOException {
+        ObjectId baseId = file.getOldBlobId();
+        ObjectId prId = file.getNewBlobId();
+        if (baseId == null || prId == null) {
+            return Collections.emptyList();
+        }
+
+        try (ObjectReader reader = repository.newObjectReader()) {
+            // A renamed or copied file is patched from its old path on the target branch
+            DiffEntry.ChangeType changeType = file.getChangeType();
+            String targetPath = changeType == DiffEntry.ChangeType.RENAME || changeType == DiffEntry.ChangeType.COPY
+                    ? file.getOldPath() : file.getPath();
+            ObjectId targetId = ObjectId.zeroId();
+            try (TreeWalk treeWalk = TreeWalk.forPath(reader, targetPath, targetTreeId)) {
+                if (treeWalk != null) {
+                    targetId = treeWalk.getObjectId(0);
+                }
+            }
+
+            // Trivial merges: target untouched since the PR's base, already equal to the PR result, or no PR content change
+            if (targetId.equals(baseId) || targetId.equals(prId) || baseId.equals(prId)) {
+                return Collections.emptyList();
+            }
+
+            HunkExtractor hunkExtractor = new HunkExtractor(repository, reader, 0);
+            RawText base = hunkExtractor.loadText(baseId);
+            RawText target = hunkExtractor.loadText(targetId);
+            RawText pr = hunkExtractor.loadText(prId);
+            if (base == null || target == null || pr == null) {
+                return Collections.singletonList(ConflictRegion.binary());
+            }
+
+            // Added or deleted sides load as empty text, so add/add and modify/delete show up as ordinary conflicts
+            MergeResult<RawText> result = new MergeAlgorithm().merge(RawTextComparator.DEFAULT, base, target, pr);
+            if (!result.containsConflicts()) {
+                return Collections.emptyList();
+            }
+
+            List<ConflictRegion> regions = new ArrayList<>();
+            int targetBegin = 0;
+            int targetEnd = 0;
+            for (MergeChunk chunk : result) {
+                if (chunk.getConflictState() == MergeChunk.ConflictState.NO_CONFLICT) {
+                    continue;
+                }
+                if (chunk.getSequenceIndex() == OURS) {
+                    targetBegin = chunk.getBegin();
+                    targetEnd = chunk.getEnd();
+                } else if (chunk.getSequenceIndex() == THEIRS) {
+                    regions.add(new ConflictRegion(targetBegin + 1, targetEnd, chunk.getBegin() + 1, chunk.getEnd()));
+                }
+            }
+            return regions;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.prporter.git;
+
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.TagOpt;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single place every component fetches through. Remembers when each refspec of a remote was last
+ * fetched and skips a fetch whose refspecs were all fetched within the TTL. A fetch without explicit
+ * refspecs is recorded under the remote's configured fetch refspecs, so it also satisfies later
+ * fetches that spell those refspecs out.
+ */
+public class FetchCoordinator {
+    private static final String TAGS_REFSPEC = "refs/tags/*:refs/tags/*";
+
+    private final Git git;
+    private final CredentialsProvider credentialsProvider;
+    private final long ttlMillis;
+    private final Map<String, Long> lastFetched = new HashMap<>();
+    private int fetchesMade;
+    private int fetchesSkipped;
+
+    public FetchCoordinator(Git git, CredentialsProvider credentialsProvider, long ttlMillis) {
+        this.git = git;
+        this.credentialsProvider = credentialsProvider;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public boolean fetch(String... refSpecs) throws GitAPIException {
+        return fetch(Constants.DEFAULT_REMOTE_NAME, false, refSpecs);
+    }
+
+    // Returns true if a fetch was made, false if all requested refspecs were still fresh
+    public synchronized boolean fetch(String remote, boolean fetchTags, String... refSpecs) throws GitAPIException {
+        List<String> keys = keysFor(remote, fetchTags, refSpecs);
+        long now = System.currentTimeMillis();
+        long oldest = now;
+        boolean fresh = true;
+        for (String key : keys) {
+            Long fetchedAt = lastFetched.get(key);
+            if (fetchedAt == null || now - fetchedAt > ttlMillis) {
+                fresh = false;
+                break;
+            }
+            oldest = Math.min(oldest, fetchedAt);
+        }
+        if (fresh) {
+            fetchesSkipped++;
+            System.out.println("Skipping fetch from " + remote + ", refs were fetched " + ((now - oldest) / 1000) + "s ago");
+            return false;
+        }
+
+        FetchCommand fetchCommand = git.fetch()
+                .setRemote(remote)
+                .setCredentialsProvider(credentialsProvider)
+                .setForceUpdate(true);
+        if (refSpecs.length > 0) {
+            fetchCommand.setRefSpecs(refSpecs);
+        }
+        if (fetchTags) {
+            fetchCommand.setTagOpt(TagOpt.FETCH_TAGS);
+        }
+        fetchCommand.call();
+        fetchesMade++;
+
+        long fetchedAt = System.currentTimeMillis();
+        for (String key : keys) {
+            lastFetched.put(key, fetchedAt);
+        }
+        return true;
+    }
+
+    public synchronized int getFetchesMade() {
+        return fetchesMade;
+    }
+
+    public synchronized int getFetchesSkipped() {
+        return fetchesSkipped;
+    }
+
+    private List<String> keysFor(String remote, boolean fetchTags, String... refSpecs) {
+        List<String> keys = new ArrayList<>();
+        if (refSpecs.length > 0) {
+            for (String refSpec : refSpecs) {
+                keys.add(remote + " " + new RefSpec(refSpec).setForceUpdate(false));
+            }
+        } else {
+            try {
+                RemoteConfig remoteConfig = new RemoteConfig(git.getRepository().getConfig(), remote);
+                for (RefSpec refSpec : remoteConfig.getFetchRefSpecs()) {
+                    keys.add(remote + " " + refSpec.setForceUpdate(false));
+                }
+            } catch (URISyntaxException e) {
+                // Fall through to the catch-all key below
+            }
+            if (keys.isEmpty()) {
+                keys.add(remote + " <default>");
+            }
+        }
+        if (fetchTags) {
+            keys.add(remote + " " + TAGS_REFSPEC);
+        }
+        return keys;
+    }
+}
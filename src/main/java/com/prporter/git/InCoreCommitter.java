@@ -0,0 +1,187 @@
+package com.prporter.git;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Commits to a branch without touching the worktree or the repository's index. The branch's tree is
+ * loaded into an in-memory DirCache once; staged files are written as blobs and each commit is built
+ * straight from that DirCache. The branch ref only moves when finish() is called, so a port of N files
+ * writes no index file at all and works the same in a bare repository.
+ */
+public class InCoreCommitter {
+    private final Repository repository;
+    private final String refName;
+    private final ObjectId startId;
+    private final DirCache dirCache;
+    private final ObjectInserter inserter;
+    private ObjectId headId;
+    private int commitsMade;
+
+    public InCoreCommitter(Repository repository, String branchName) throws IOException {
+        this.repository = repository;
+        this.refName = Constants.R_HEADS + branchName;
+        Ref ref = repository.exactRef(refName);
+        if (ref == null) {
+            throw new IOException("Branch " + branchName + " does not exist");
+        }
+        this.startId = ref.getObjectId();
+        this.headId = startId;
+        this.dirCache = DirCache.newInCore();
+        try (ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit start = revWalk.parseCommit(startId);
+            DirCacheBuilder builder = dirCache.builder();
+            builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, start.getTree());
+            builder.finish();
+        }
+        this.inserter = repository.newObjectInserter();
+    }
+
+    // Content of path as of the last staged change, null if the branch has no such file
+    public synchronized byte[] read(String path) throws IOException {
+        DirCacheEntry entry = dirCache.getEntry(path);
+        if (entry == null) {
+            return null;
+        }
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return reader.open(entry.getObjectId(), Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+        }
+    }
+
+    // Size of path's content as of the last staged change, -1 if the branch has no such file
+    public synchronized long size(String path) throws IOException {
+        DirCacheEntry entry = dirCache.getEntry(path);
+        if (entry == null) {
+            return -1;
+        }
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return reader.getObjectSize(entry.getObjectId(), Constants.OBJ_BLOB);
+        }
+    }
+
+    // Stream path's content to out without loading it into memory as a whole
+    public synchronized void copyTo(String path, OutputStream out) throws IOException {
+        DirCacheEntry entry = dirCache.getEntry(path);
+        if (entry == null) {
+            throw new NoSuchFileException(path);
+        }
+        try (ObjectReader reader = repository.newObjectReader()) {
+            reader.open(entry.getObjectId(), Constants.OBJ_BLOB).copyTo(out);
+        }
+    }
+
+    // Write content as a blob and point path at it, keeping the file mode of an existing entry
+    public synchronized void stage(String path, byte[] content) throws IOException {
+        stageBlob(path, inserter.insert(Constants.OBJ_BLOB, content), content.length);
+    }
+
+    // Same as stage(path, bytes) with the content streamed from a file
+    public synchronized void stage(String path, Path content) throws IOException {
+        long length = Files.size(content);
+        try (InputStream in = Files.newInputStream(content)) {
+            stageBlob(path, inserter.insert(Constants.OBJ_BLOB, length, in), length);
+        }
+    }
+
+    // Point path at a blob already in the repository, e.g. a PR's version of the file, with the given mode
+    public synchronized void stage(String path, ObjectId blobId, FileMode mode) throws IOException {
+        long length;
+        try (ObjectReader reader = repository.newObjectReader()) {
+            length = reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+        }
+        stageBlob(path, blobId, length, mode);
+    }
+
+    // Remove path from the staged tree
+    public synchronized void delete(String path) {
+        DirCacheEditor editor = dirCache.editor();
+        editor.add(new DirCacheEditor.DeletePath(path));
+        editor.finish();
+    }
+
+    // Blob id of path as of the last staged change, null if the branch has no such file
+    public synchronized ObjectId getObjectId(String path) {
+        DirCacheEntry entry = dirCache.getEntry(path);
+        return entry == null ? null : entry.getObjectId();
+    }
+
+    private void stageBlob(String path, ObjectId blobId, long length) {
+        stageBlob(path, blobId, length, null);
+    }
+
+    // A null mode keeps the mode of an existing entry, a new one becomes a regular file
+    private void stageBlob(String path, ObjectId blobId, long length, FileMode mode) {
+        DirCacheEditor editor = dirCache.editor();
+        editor.add(new DirCacheEditor.PathEdit(path) {
+            @Override
+            public void apply(DirCacheEntry entry) {
+                if (mode != null) {
+                    entry.setFileMode(mode);
+                } else if (entry.getRawMode() == 0) {
+                    entry.setFileMode(FileMode.REGULAR_FILE);
+                }
+                entry.setObjectId(blobId);
+                entry.setLength(length);
+            }
+        });
+        editor.finish();
+    }
+
+    // Commit the staged tree on top of the previous in-core commit
+    public synchronized ObjectId commit(String message) throws IOException {
+        ObjectId treeId = dirCache.writeTree(inserter);
+        PersonIdent ident = new PersonIdent(repository);
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(treeId);
+        commit.setParentId(headId);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage(message);
+        headId = inserter.insert(commit);
+        inserter.flush();
+        commitsMade++;
+        return headId;
+    }
+
+    // Move the branch to the last in-core commit; fails if someone else moved it meanwhile
+    public synchronized void finish() throws IOException {
+        inserter.close();
+        if (headId.equals(startId)) {
+            return;
+        }
+        RefUpdate update = repository.updateRef(refName);
+        update.setExpectedOldObjectId(startId);
+        update.setNewObjectId(headId);
+        update.setRefLogMessage("port: " + commitsMade + " in-core commits", false);
+        RefUpdate.Result result = update.update();
+        if (result != RefUpdate.Result.FAST_FORWARD && result != RefUpdate.Result.NEW
+                && result != RefUpdate.Result.FORCED) {
+            throw new IOException("Could not update " + refName + ": " + result);
+        }
+    }
+
+    public synchronized int getCommitsMade() {
+        return commitsMade;
+    }
+}
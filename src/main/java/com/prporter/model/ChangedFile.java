@@ -1,19 +1,37 @@
 package com.prporter.model;
 
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ChangedFile {
     private String path;
+    // Both computed on first access, null until then
     private List<DiffHunk> diffHunks;
+    private List<MethodChange> methodChanges;
+    private HunkSource hunkSource;
     private FileStatus status;
     private String reason;
-    private List<MethodChange> methodChanges;
+    private ObjectId oldBlobId;
+    private ObjectId newBlobId;
+    private DiffEntry.ChangeType changeType = DiffEntry.ChangeType.MODIFY;
+    private String oldPath;
+    private FileMode newMode = FileMode.REGULAR_FILE;
+    // Decided together with the hunks, null until they are loaded
+    private Boolean binary;
 
     public ChangedFile(String path) {
         this.path = path;
-        this.diffHunks = new ArrayList<>();
-        this.methodChanges = new ArrayList<>();
         this.status = FileStatus.PENDING;
     }
 
@@ -21,14 +39,97 @@ public class ChangedFile {
         return path;
     }
 
-    public List<DiffHunk> getDiffHunks() {
+    // Blob of the file before the PR (the merge commit's first parent), zero id if the PR added it
+    public ObjectId getOldBlobId() {
+        return oldBlobId;
+    }
+
+    public void setOldBlobId(ObjectId oldBlobId) {
+        this.oldBlobId = oldBlobId;
+    }
+
+    // Blob of the file in the merge commit, zero id if the PR deleted it
+    public ObjectId getNewBlobId() {
+        return newBlobId;
+    }
+
+    public void setNewBlobId(ObjectId newBlobId) {
+        this.newBlobId = newBlobId;
+    }
+
+    public DiffEntry.ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public void setChangeType(DiffEntry.ChangeType changeType) {
+        this.changeType = changeType;
+    }
+
+    // Path before the PR, differs from getPath() for a rename or copy
+    public String getOldPath() {
+        return oldPath != null ? oldPath : path;
+    }
+
+    public void setOldPath(String oldPath) {
+        this.oldPath = oldPath;
+    }
+
+    // File mode in the merge commit, used when the PR's blob is written as a new file
+    public FileMode getNewMode() {
+        return newMode;
+    }
+
+    public void setNewMode(FileMode newMode) {
+        this.newMode = newMode;
+    }
+
+    // Either side of the change is binary, so the file has no line hunks. Loads the hunks if the source has
+    // not decided it yet.
+    public synchronized boolean isBinary() {
+        if (binary == null) {
+            getDiffHunks();
+        }
+        return binary != null && binary;
+    }
+
+    public synchronized void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    // Hunks are diffed from the blobs the first time they are asked for and kept from then on. Without a
+    // source the file has no hunks until setDiffHunks is called.
+    public void setHunkSource(HunkSource hunkSource) {
+        this.hunkSource = hunkSource;
+    }
+
+    public synchronized List<DiffHunk> getDiffHunks() {
+        if (diffHunks == null) {
+            try {
+                diffHunks = hunkSource != null ? hunkSource.loadHunks(this) : new ArrayList<>();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not diff " + path + ": " + e.getMessage(), e);
+            }
+        }
         return diffHunks;
     }
 
-    public void setDiffHunks(List<DiffHunk> diffHunks) {
+    public synchronized void setDiffHunks(List<DiffHunk> diffHunks) {
         this.diffHunks = diffHunks;
-        // Analyze diff hunks to identify method changes
-        analyzeMethodChanges();
+        this.methodChanges = null;
+    }
+
+    // Drops the computed hunks and method changes, so a file that is done with holds no diff until something
+    // asks for it again. Only a file with a source can reload them; hunks set directly are kept.
+    public synchronized void releaseDiffHunks() {
+        if (hunkSource != null) {
+            diffHunks = null;
+            methodChanges = null;
+        }
+    }
+
+    // Whether the hunks have been computed, false for a file nothing has looked at yet
+    public synchronized boolean hasDiffHunksLoaded() {
+        return diffHunks != null;
     }
 
     public FileStatus getStatus() {
@@ -47,63 +148,90 @@ public class ChangedFile {
         this.reason = reason;
     }
 
-    public List<MethodChange> getMethodChanges() {
+    public synchronized List<MethodChange> getMethodChanges() {
+        if (methodChanges == null) {
+            List<DiffHunk> hunks = getDiffHunks();
+            if (hunkSource == null || hunks.isEmpty()) {
+                methodChanges = new ArrayList<>();
+            } else {
+                try {
+                    methodChanges = analyzeMethodChanges(hunks, hunkSource.loadMethodIndex(oldBlobId),
+                            hunkSource.loadMethodIndex(newBlobId));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not index methods of " + path + ": " + e.getMessage(), e);
+                }
+            }
+        }
         return methodChanges;
     }
 
-    private void analyzeMethodChanges() {
-        methodChanges.clear();
-        MethodChange currentMethod = null;
-        StringBuilder methodContent = new StringBuilder();
-
-        for (DiffHunk hunk : diffHunks) {
-            String[] lines = hunk.getContent().split("\n");
-            for (String line : lines) {
-                // Look for method declarations
-                if (line.matches(".*\\b(public|private|protected|static|final)\\s+\\w+\\s+\\w+\\s*\\(.*\\)\\s*\\{")) {
-                    // Save previous method if exists
-                    if (currentMethod != null) {
-                        currentMethod.setContent(methodContent.toString());
-                        methodChanges.add(currentMethod);
-                    }
-                    // Start new method
-                    currentMethod = new MethodChange();
-                    currentMethod.setName(extractMethodName(line));
-                    currentMethod.setStartLine(hunk.getStartLine());
-                    methodContent = new StringBuilder();
+    // Every hunk line belongs to the innermost method around it: removed lines by the old blob's method index,
+    // added and context lines by the new blob's. Methods with at least one added or removed line are changed.
+    private static List<MethodChange> analyzeMethodChanges(List<DiffHunk> hunks, MethodIndex oldMethods, MethodIndex newMethods) {
+        Map<String, MethodChange> bySignature = new LinkedHashMap<>();
+        Map<String, StringBuilder> contents = new HashMap<>();
+        Set<String> changed = new HashSet<>();
+        for (DiffHunk hunk : hunks) {
+            int oldLine = hunk.getOldStartLine();
+            int newLine = hunk.getNewStartLine();
+            for (int i = 0; i < hunk.getLineCount(); i++) {
+                char kind = hunk.getKind(i);
+                MethodIndex.MethodRange method;
+                if (kind == HunkBuffer.MARKER) {
+                    continue;
+                } else if (kind == HunkBuffer.REMOVED) {
+                    method = oldMethods.enclosing(oldLine++);
+                } else if (kind == HunkBuffer.ADDED) {
+                    method = newMethods.enclosing(newLine++);
+                } else {
+                    method = newMethods.enclosing(newLine++);
+                    oldLine++;
                 }
-                if (currentMethod != null) {
-                    methodContent.append(line).append("\n");
+                if (method == null) {
+                    continue;
+                }
+                String signature = method.getSignature();
+                if (!bySignature.containsKey(signature)) {
+                    MethodChange change = new MethodChange();
+                    change.setName(method.getName());
+                    change.setSignature(signature);
+                    change.setStartLine(method.getStartLine());
+                    bySignature.put(signature, change);
+                    contents.put(signature, new StringBuilder());
+                }
+                contents.get(signature).append(kind).append(hunk.getLine(i)).append('\n');
+                if (kind != HunkBuffer.CONTEXT) {
+                    changed.add(signature);
                 }
             }
         }
-        // Add the last method
-        if (currentMethod != null) {
-            currentMethod.setContent(methodContent.toString());
-            methodChanges.add(currentMethod);
-        }
-    }
 
-    private String extractMethodName(String line) {
-        // Extract method name from declaration
-        String[] parts = line.split("\\s+");
-        for (int i = 0; i < parts.length; i++) {
-            if (parts[i].contains("(")) {
-                return parts[i].substring(0, parts[i].indexOf("("));
+        List<MethodChange> methodChanges = new ArrayList<>();
+        for (MethodChange change : bySignature.values()) {
+            if (changed.contains(change.getSignature())) {
+                change.setContent(contents.get(change.getSignature()).toString());
+                methodChanges.add(change);
             }
         }
-        return "unknown";
+        return methodChanges;
     }
 
+    // A hunk of the file's diff, a view into the HunkBuffer shared by all hunks of the file
     public static class DiffHunk {
         private int startLine;
         private int endLine;
-        private String content;
+        private final HunkBuffer buffer;
+        private final int index;
 
         public DiffHunk(int startLine, int endLine, String content) {
+            this(startLine, endLine, HunkBuffer.parse(content), 0);
+        }
+
+        public DiffHunk(int startLine, int endLine, HunkBuffer buffer, int index) {
             this.startLine = startLine;
             this.endLine = endLine;
-            this.content = content;
+            this.buffer = buffer;
+            this.index = index;
         }
 
         public int getStartLine() {
@@ -114,13 +242,57 @@ public class ChangedFile {
             return endLine;
         }
 
+        // The @@ line
+        public String getHeader() {
+            return buffer.header(index);
+        }
+
+        // First line of the hunk in the old file, from the @@ header; for an empty range the line before it
+        public int getOldStartLine() {
+            return rangeStart('-');
+        }
+
+        // First line of the hunk in the new file, from the @@ header; for an empty range the line before it
+        public int getNewStartLine() {
+            return rangeStart('+');
+        }
+
+        private int rangeStart(char side) {
+            String header = getHeader();
+            int pos = header.indexOf(side, 2) + 1;
+            int start = 0;
+            while (pos > 0 && pos < header.length() && Character.isDigit(header.charAt(pos))) {
+                start = start * 10 + header.charAt(pos++) - '0';
+            }
+            return start;
+        }
+
+        // Number of lines after the header
+        public int getLineCount() {
+            return buffer.bodySize(index);
+        }
+
+        // HunkBuffer.CONTEXT, ADDED, REMOVED or MARKER
+        public char getKind(int line) {
+            return buffer.kindAt(index, line);
+        }
+
+        // Text of a line after the header, without its prefix
+        public String getLine(int line) {
+            return buffer.textAt(index, line);
+        }
+
+        // The hunk as diff text, built on each call: header, then the prefixed lines, each ending in '\n'
         public String getContent() {
-            return content;
+            StringBuilder content = new StringBuilder();
+            buffer.appendTo(index, content);
+            return content.toString();
         }
     }
 
     public static class MethodChange {
         private String name;
+        private String signature;
         private int startLine;
         private String content;
         private boolean ported;
@@ -137,6 +309,16 @@ public class ChangedFile {
             this.name = name;
         }
 
+        // Name and parameter types, e.g. "put(String, List<Integer>)"
+        public String getSignature() {
+            return signature;
+        }
+
+        public void setSignature(String signature) {
+            this.signature = signature;
+        }
+
+        // Where the method starts, in the new file unless the PR removed it
         public int getStartLine() {
             return startLine;
         }
@@ -4,5 +4,11 @@ public enum FileStatus {
     PENDING,
     PORTED,
     PARTIALLY_PORTED,
+    // Whole-file outcomes that never go through line-based patching
+    ADDED,
+    DELETED,
+    RENAMED,
+    BLOB_REPLACED,
+    BINARY_REPLACED,
     SKIPPED
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+package com.prporter.model;
+
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * All diff hunks of one file in a single byte buffer. Every hunk is its @@ header line followed by its
+ * body lines; a line is stored as raw text without its +/-/space prefix or terminator, with an offset into
+ * the buffer and a kind classified once when the hunk is built. Consumers walk lines by index and decode
+ * only the ones they need, so a file's diff is held once however many places read it.
+ */
+public class HunkBuffer {
+    public static final char HEADER = '@';
+    public static final char CONTEXT = ' ';
+    public static final char ADDED = '+';
+    public static final char REMOVED = '-';
+    // "\ No newline at end of file"
+    public static final char MARKER = '\\';
+
+    private final byte[] data;
+    // lineStarts[i] is where line i starts, lineStarts[lineCount] the end of the data
+    private final int[] lineStarts;
+    private final byte[] kinds;
+    // hunkStarts[h] is the index of hunk h's header line, hunkStarts[hunkCount] the line count
+    private final int[] hunkStarts;
+
+    private HunkBuffer(byte[] data, int[] lineStarts, byte[] kinds, int[] hunkStarts) {
+        this.data = data;
+        this.lineStarts = lineStarts;
+        this.kinds = kinds;
+        this.hunkStarts = hunkStarts;
+    }
+
+    // Single hunk from text in the form DiffHunk has always used: the @@ header line, then prefixed body lines
+    public static HunkBuffer parse(String content) {
+        Builder builder = new Builder();
+        String[] lines = content.split("\n");
+        builder.startHunk(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            char kind = line.isEmpty() ? CONTEXT : line.charAt(0);
+            if (kind != ADDED && kind != REMOVED && kind != MARKER) {
+                kind = CONTEXT;
+            }
+            byte[] text = (line.isEmpty() ? "" : line.substring(1)).getBytes(StandardCharsets.UTF_8);
+            builder.addLine(kind, text, 0, text.length);
+        }
+        return builder.build();
+    }
+
+    public int hunkCount() {
+        return hunkStarts.length - 1;
+    }
+
+    // Number of body lines of a hunk, its header not counted
+    public int bodySize(int hunk) {
+        return hunkStarts[hunk + 1] - hunkStarts[hunk] - 1;
+    }
+
+    public String header(int hunk) {
+        return text(hunkStarts[hunk]);
+    }
+
+    public char kindAt(int hunk, int index) {
+        return (char) kinds[bodyLine(hunk, index)];
+    }
+
+    public String textAt(int hunk, int index) {
+        return text(bodyLine(hunk, index));
+    }
+
+    // The hunk as text: header, then each body line with its prefix, every line ending in '\n'
+    public void appendTo(int hunk, StringBuilder out) {
+        for (int line = hunkStarts[hunk]; line < hunkStarts[hunk + 1]; line++) {
+            if (kinds[line] != HEADER) {
+                out.append((char) kinds[line]);
+            }
+            out.append(text(line)).append('\n');
+        }
+    }
+
+    // Bytes held for line text, for comparing storage size
+    public int dataSize() {
+        return data.length;
+    }
+
+    private int bodyLine(int hunk, int index) {
+        int line = hunkStarts[hunk] + 1 + index;
+        if (index < 0 || line >= hunkStarts[hunk + 1]) {
+            throw new IndexOutOfBoundsException("Line " + index + " of hunk " + hunk);
+        }
+        return line;
+    }
+
+    // Decoded the same way RawText.getString decodes a line; plain ASCII, the common case, is copied as is
+    private String text(int line) {
+        int start = lineStarts[line];
+        int end = lineStarts[line + 1];
+        for (int i = start; i < end; i++) {
+            if (data[i] < 0) {
+                return RawParseUtils.decode(data, start, end);
+            }
+        }
+        return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Appends hunks and their lines to one growing buffer; build() trims the arrays to size.
+     */
+    public static class Builder {
+        private byte[] data = new byte[1024];
+        private int dataSize;
+        private int[] lineStarts = new int[64];
+        private byte[] kinds = new byte[64];
+        private int lineCount;
+        private int[] hunkStarts = new int[8];
+        private int hunkCount;
+
+        public void startHunk(String header) {
+            if (hunkCount + 1 >= hunkStarts.length) {
+                hunkStarts = Arrays.copyOf(hunkStarts, hunkStarts.length * 2);
+            }
+            hunkStarts[hunkCount++] = lineCount;
+            byte[] text = header.getBytes(StandardCharsets.UTF_8);
+            addLine(HEADER, text, 0, text.length);
+        }
+
+        public void addLine(char kind, byte[] source, int start, int end) {
+            if (hunkCount == 0) {
+                throw new IllegalStateException("Line added before the first hunk header");
+            }
+            if (lineCount + 1 >= lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+                kinds = Arrays.copyOf(kinds, kinds.length * 2);
+            }
+            int length = end - start;
+            if (dataSize + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + length));
+            }
+            System.arraycopy(source, start, data, dataSize, length);
+            lineStarts[lineCount] = dataSize;
+            kinds[lineCount++] = (byte) kind;
+            dataSize += length;
+        }
+
+        public HunkBuffer build() {
+            int[] starts = Arrays.copyOf(lineStarts, lineCount + 1);
+            starts[lineCount] = dataSize;
+            int[] hunks = Arrays.copyOf(hunkStarts, hunkCount + 1);
+            hunks[hunkCount] = lineCount;
+            return new HunkBuffer(Arrays.copyOf(data, dataSize), starts, Arrays.copyOf(kinds, lineCount), hunks);
+        }
+    }
+}
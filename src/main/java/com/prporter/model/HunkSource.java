@@ -0,0 +1,17 @@
+package com.prporter.model;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads what ChangedFile computes from its blob ids on first access: the diff hunks and the method index of
+ * either side. May be called from any thread.
+ */
+public interface HunkSource {
+    List<ChangedFile.DiffHunk> loadHunks(ChangedFile file) throws IOException;
+
+    // Empty index for the zero id of an added or deleted side
+    MethodIndex loadMethodIndex(ObjectId blobId) throws IOException;
+}
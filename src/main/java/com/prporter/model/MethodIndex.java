@@ -0,0 +1,111 @@
+package com.prporter.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The method and constructor declarations of one source blob, with their signatures and line spans. Lines are
+ * 1-based and inclusive; a declaration starts at its first annotation or modifier and ends at its closing brace,
+ * or at the semicolon of a method without a body.
+ */
+public class MethodIndex {
+    public static final MethodIndex EMPTY = new MethodIndex(Collections.emptyList());
+
+    // Ordered by start line, so a nested method follows the method it is declared in
+    private final List<MethodRange> methods;
+    // maxEnd[i] is the last line of any of methods 0..i, bounds the backwards search in enclosing()
+    private final int[] maxEnd;
+
+    public MethodIndex(List<MethodRange> methods) {
+        List<MethodRange> sorted = new ArrayList<>(methods);
+        sorted.sort(Comparator.comparingInt(MethodRange::getStartLine));
+        this.methods = Collections.unmodifiableList(sorted);
+        this.maxEnd = new int[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            maxEnd[i] = Math.max(i > 0 ? maxEnd[i - 1] : 0, sorted.get(i).getEndLine());
+        }
+    }
+
+    public List<MethodRange> getMethods() {
+        return methods;
+    }
+
+    // First method with this name in file order, null if there is none
+    public MethodRange find(String name) {
+        for (MethodRange method : methods) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    // Method by signature as built by the scanner, e.g. "put(Map<String, List<Integer>>, int...)"
+    public MethodRange findBySignature(String signature) {
+        for (MethodRange method : methods) {
+            if (method.getSignature().equals(signature)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    // Innermost method whose span contains the line, null for lines outside every method
+    public MethodRange enclosing(int line) {
+        int low = 0;
+        int high = methods.size() - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (methods.get(mid).getStartLine() <= line) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int i = last; i >= 0 && maxEnd[i] >= line; i--) {
+            if (methods.get(i).getEndLine() >= line) {
+                return methods.get(i);
+            }
+        }
+        return null;
+    }
+
+    public static class MethodRange {
+        private final String name;
+        private final String signature;
+        private final int startLine;
+        private final int endLine;
+
+        public MethodRange(String name, String signature, int startLine, int endLine) {
+            this.name = name;
+            this.signature = signature;
+            this.startLine = startLine;
+            this.endLine = endLine;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public int getStartLine() {
+            return startLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        @Override
+        public String toString() {
+            return signature + " [" + startLine + "-" + endLine + "]";
+        }
+    }
+}
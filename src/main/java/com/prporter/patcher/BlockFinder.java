@@ -0,0 +1,11 @@
+package com.prporter.patcher;
+
+import java.util.List;
+
+/**
+ * Finds a block of consecutive lines in a target file.
+ */
+public interface BlockFinder {
+    // Index at which block starts in the file, preferring the match nearest to expectedIndex; -1 if absent
+    int find(List<String> block, int expectedIndex);
+}
@@ -1,25 +1,68 @@
 package com.prporter.patcher;
 
 import com.prporter.model.ChangedFile.MethodChange;
+import com.prporter.model.FileStatus;
+import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.RmCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import com.prporter.ai.AIPatchClient;
+import com.prporter.ai.AIResponseCache;
 import com.prporter.analyzer.PRAnalyzer;
-import okhttp3.*;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.prporter.git.InCoreCommitter;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class FilePatcher {
     private final Git git;
     private final Repository repository;
     private final PRAnalyzer prAnalyzer;
+    private int maxFuzz = 2;
+    private boolean ignoreWhitespace;
+    private InCoreCommitter inCoreCommitter;
+    private boolean batchCommit;
+    private AIPatchClient aiClient;
+    private AIResponseCache aiCache;
+    // Lines of target file sent around a hunk in a windowed AI prompt, 0 sends the whole file
+    private int aiPromptWindow;
+    // Target files of at least this many bytes are memory-mapped and patched as bytes
+    private long largeFileThreshold = Long.MAX_VALUE;
+    // Files staged since the last batch commit, with the per-file sections of its message
+    private final List<String> batchedPaths = new ArrayList<>();
+    private int batchedFiles;
+    private final StringBuilder batchedMessage = new StringBuilder();
 
     public FilePatcher(Git git, PRAnalyzer prAnalyzer) {
         this.git = git;
@@ -27,40 +70,330 @@ public class FilePatcher {
         this.prAnalyzer = prAnalyzer;
     }
 
+    // Maximum number of context lines dropped from each end of a hunk that does not match exactly, like patch --fuzz
+    public void setMaxFuzz(int maxFuzz) {
+        this.maxFuzz = Math.max(0, maxFuzz);
+    }
+
+    // Also try matching hunks with whitespace differences ignored before falling back to AI, like patch -l
+    public void setIgnoreWhitespace(boolean ignoreWhitespace) {
+        this.ignoreWhitespace = ignoreWhitespace;
+    }
+
+    // Read target files from and commit to the committer's branch instead of the worktree and index
+    public void setInCoreCommitter(InCoreCommitter inCoreCommitter) {
+        this.inCoreCommitter = inCoreCommitter;
+    }
+
+    // Client shared by all AI fallback requests of the run
+    public synchronized void setAIClient(AIPatchClient aiClient) {
+        this.aiClient = aiClient;
+    }
+
+    // Reuse AI replies from earlier runs for the same hunk, target content and model parameters
+    public void setAICache(AIResponseCache aiCache) {
+        this.aiCache = aiCache;
+    }
+
+    // Send the AI only this many lines around a hunk and ask for a diff instead of the whole rewritten file
+    public void setAIPromptWindow(int aiPromptWindow) {
+        this.aiPromptWindow = Math.max(0, aiPromptWindow);
+    }
+
+    // Patch target files of at least this many bytes through a memory-mapped line index instead of reading
+    // them into a list of lines; 0 or less turns large-file mode off
+    public void setLargeFileThreshold(long largeFileThreshold) {
+        this.largeFileThreshold = largeFileThreshold > 0 ? largeFileThreshold : Long.MAX_VALUE;
+    }
+
+    // Stage every patched file and write one commit per PR from commitBatch instead of one commit per file
+    public void setBatchCommit(boolean batchCommit) {
+        this.batchCommit = batchCommit;
+    }
+
     public void applyChanges(com.prporter.model.ChangedFile file, String targetBranch, String prNumber, String sourceBranch) throws IOException, GitAPIException {
-        Path filePath = git.getRepository().getWorkTree().toPath().resolve(file.getPath());
-        List<String> currentLines = Files.readAllLines(filePath);
+        commitPatch(preparePatch(file, sourceBranch), prNumber);
+    }
+
+    public PreparedPatch preparePatch(com.prporter.model.ChangedFile file, String sourceBranch) throws IOException {
+        try {
+            return preparePatchAsync(file, sourceBranch).join();
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Apply the file's hunks in memory only. Neither the worktree nor the index is written,
+    // so patches for different files can be prepared concurrently.
+    // All hunks are first located against the unpatched lines, then spliced into one output buffer,
+    // so the file is copied once however many hunks it has. Hunks that cannot be placed go to the
+    // AI fallback afterwards, against the locally patched result. The local part runs before this
+    // returns; the future only waits on AI replies, so a file without AI hunks is already complete.
+    public CompletableFuture<PreparedPatch> preparePatchAsync(com.prporter.model.ChangedFile file, String sourceBranch) throws IOException {
+        PreparedPatch blobPatch = prepareBlobPatch(file);
+        if (blobPatch != null) {
+            return CompletableFuture.completedFuture(blobPatch);
+        }
+        // A renamed file is patched from the target branch's content at its old path
+        String sourcePath = file.getOldPath();
+        String removedPath = file.getChangeType() == DiffEntry.ChangeType.RENAME ? sourcePath : null;
+        if (targetSize(sourcePath) >= largeFileThreshold) {
+            PreparedPatch largePatch = prepareLargePatch(file, sourcePath);
+            largePatch.removedPath = removedPath;
+            return CompletableFuture.completedFuture(largePatch);
+        }
+        List<String> originalLines = readTargetLines(sourcePath);
+        List<com.prporter.model.ChangedFile.DiffHunk> hunks = file.getDiffHunks();
+
+        // null means the hunk still needs the AI fallback
+        HunkApplication[] applications = new HunkApplication[hunks.size()];
+        List<HunkPlacement> placements = locateAll(new PatchTarget(originalLines), hunks, applications);
+        List<String> currentLines = splice(originalLines, placements);
+        LineShifts shifts = new LineShifts();
+        for (HunkPlacement placement : placements) {
+            shifts.add(placement.startIndex, placement.patchHunk.lineDelta());
+        }
+
+        // Each AI reply changes the file the next prompt is built from, so a file's AI hunks are sent one after another
+        CompletableFuture<Void> aiHunks = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < hunks.size(); i++) {
+            if (applications[i] == null) {
+                int hunkIndex = i;
+                aiHunks = aiHunks.thenCompose(ignored -> applyWithAI(currentLines, shifts, hunks.get(hunkIndex)))
+                        .thenAccept(application -> applications[hunkIndex] = application);
+            }
+        }
+
+        return aiHunks.thenApply(ignored -> {
+            List<String> portedHunks = new ArrayList<>();
+            List<String> failedHunks = new ArrayList<>();
+            describeHunks(hunks, applications, portedHunks, failedHunks);
+            PreparedPatch patch = new PreparedPatch(file, currentLines, portedHunks, failedHunks);
+            patch.removedPath = removedPath;
+            return patch;
+        });
+    }
+
+    // Whole-file fast paths, decided on blob ids alone: additions, deletions and renames are tree operations,
+    // and a file the target branch has not changed since the PR's base simply becomes the PR's blob. Binary
+    // files never reach line-based patching. Returns null when the file needs line-based patching.
+    private PreparedPatch prepareBlobPatch(com.prporter.model.ChangedFile file) throws IOException {
+        ObjectId oldBlobId = file.getOldBlobId();
+        ObjectId newBlobId = file.getNewBlobId();
+        if (oldBlobId == null || newBlobId == null) {
+            // Not from a PR analysis, there are only hunks
+            return null;
+        }
+        String path = file.getPath();
+        switch (file.getChangeType()) {
+            case ADD: {
+                ObjectId targetBlobId = targetBlobId(path);
+                if (targetBlobId == null) {
+                    return PreparedPatch.wholeBlob(file, FileStatus.ADDED, "Added with the PR's content", newBlobId, file.getNewMode());
+                }
+                if (targetBlobId.equals(newBlobId)) {
+                    return PreparedPatch.unchanged(file, FileStatus.ADDED, "Already on the target branch with the PR's content");
+                }
+                return PreparedPatch.unchanged(file, FileStatus.SKIPPED, "Added in PR, but the target branch already has a different version");
+            }
+            case DELETE: {
+                ObjectId targetBlobId = targetBlobId(path);
+                if (targetBlobId == null) {
+                    return PreparedPatch.unchanged(file, FileStatus.DELETED, "Already absent from the target branch");
+                }
+                if (targetBlobId.equals(oldBlobId)) {
+                    return PreparedPatch.deletion(file, "Deleted as in PR");
+                }
+                return PreparedPatch.unchanged(file, FileStatus.SKIPPED, "Deleted in PR, but changed on the target branch");
+            }
+            case RENAME:
+            case COPY: {
+                boolean rename = file.getChangeType() == DiffEntry.ChangeType.RENAME;
+                String verb = rename ? "Renamed" : "Copied";
+                ObjectId sourceBlobId = targetBlobId(file.getOldPath());
+                if (sourceBlobId == null) {
+                    return PreparedPatch.unchanged(file, FileStatus.SKIPPED, verb + " in PR, but " + file.getOldPath() + " does not exist on the target branch");
+                }
+                if (targetBlobId(path) != null) {
+                    return PreparedPatch.unchanged(file, FileStatus.SKIPPED, verb + " in PR, but the target branch already has " + path);
+                }
+                FileStatus status = rename ? FileStatus.RENAMED : FileStatus.ADDED;
+                PreparedPatch patch = null;
+                if (sourceBlobId.equals(oldBlobId)) {
+                    patch = PreparedPatch.wholeBlob(file, status, verb + " from " + file.getOldPath() + " with the PR's content", newBlobId, file.getNewMode());
+                } else if (oldBlobId.equals(newBlobId)) {
+                    patch = PreparedPatch.wholeBlob(file, status, verb + " from " + file.getOldPath() + ", keeping the target branch's content", sourceBlobId, file.getNewMode());
+                } else if (file.isBinary()) {
+                    return PreparedPatch.unchanged(file, FileStatus.SKIPPED, "Binary file " + verb.toLowerCase() + " and changed in PR, but also changed on the target branch");
+                }
+                if (patch != null && rename) {
+                    patch.removedPath = file.getOldPath();
+                }
+                return patch;
+            }
+            default: {
+                if (oldBlobId.equals(targetBlobId(path))) {
+                    return PreparedPatch.wholeBlob(file, file.isBinary() ? FileStatus.BINARY_REPLACED : FileStatus.BLOB_REPLACED,
+                            "Unchanged on the target branch since the PR's base, replaced with the PR's version", newBlobId, file.getNewMode());
+                }
+                if (file.isBinary()) {
+                    return PreparedPatch.unchanged(file, FileStatus.SKIPPED, "Binary file changed in both the PR and the target branch");
+                }
+                return null;
+            }
+        }
+    }
 
-        List<String> portedHunks = new ArrayList<>();
-        List<String> failedHunks = new ArrayList<>();
+    // Blob of path on the port branch, null if the branch has no such file
+    private ObjectId targetBlobId(String path) throws IOException {
+        if (inCoreCommitter != null) {
+            return inCoreCommitter.getObjectId(path);
+        }
+        ObjectId headId = repository.resolve(Constants.HEAD);
+        if (headId == null) {
+            return null;
+        }
+        try (RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = TreeWalk.forPath(repository, path, revWalk.parseCommit(headId).getTree())) {
+            return treeWalk == null ? null : treeWalk.getObjectId(0);
+        }
+    }
 
-        for (com.prporter.model.ChangedFile.DiffHunk hunk : file.getDiffHunks()) {
+    // Large-file mode: the target is memory-mapped and indexed by line offsets, hunks are matched against
+    // its bytes, and the patched file is streamed to a temporary file copying the untouched ranges as they
+    // are. No line of the file becomes a String. Hunks that cannot be placed are not sent to the AI, whose
+    // prompt could not hold the file anyway, and are left for manual review.
+    private PreparedPatch prepareLargePatch(com.prporter.model.ChangedFile file, String sourcePath) throws IOException {
+        // A temporary copy is mapped rather than the worktree file: a mapping lives until it is garbage collected,
+        // and on some platforms a mapped file cannot be truncated when the result is written back
+        Path source = createLargeFileTemp();
+        try {
+            if (inCoreCommitter == null) {
+                Files.copy(git.getRepository().getWorkTree().toPath().resolve(sourcePath), source,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (OutputStream out = Files.newOutputStream(source)) {
+                    inCoreCommitter.copyTo(sourcePath, out);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteTemp(source);
+            throw e;
+        }
+        Path patched = createLargeFileTemp();
+        try {
+            MappedLineIndex index = new MappedLineIndex(source);
+            System.out.println("Large file (" + Files.size(source) / (1024 * 1024) + " MB, " + index.lineCount() +
+                               " lines), patching it memory-mapped");
+            List<com.prporter.model.ChangedFile.DiffHunk> hunks = file.getDiffHunks();
+            HunkApplication[] applications = new HunkApplication[hunks.size()];
+            List<HunkPlacement> placements = locateAll(new PatchTarget(index), hunks, applications);
+            try (FileChannel out = FileChannel.open(patched, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                splice(index, placements, out);
+            }
+            for (int i = 0; i < applications.length; i++) {
+                if (applications[i] == null) {
+                    System.out.println("[AI PATCH] Not sending hunk at lines " + hunks.get(i).getStartLine() + "-" +
+                                       hunks.get(i).getEndLine() + " of a large file to AI. Flagging for manual review.");
+                    applications[i] = HunkApplication.failed();
+                }
+            }
+            List<String> portedHunks = new ArrayList<>();
+            List<String> failedHunks = new ArrayList<>();
+            describeHunks(hunks, applications, portedHunks, failedHunks);
+            return new PreparedPatch(file, patched, portedHunks, failedHunks);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(patched);
+            throw e;
+        } finally {
+            deleteTemp(source);
+        }
+    }
+
+    // Locate every hunk against the unpatched file and drop placements that overlap an earlier one.
+    // Returns the placements in file order; hunks left at null in applications need the AI fallback.
+    private List<HunkPlacement> locateAll(PatchTarget target, List<com.prporter.model.ChangedFile.DiffHunk> hunks,
+                                          HunkApplication[] applications) {
+        List<HunkPlacement> placements = new ArrayList<>();
+        for (int i = 0; i < hunks.size(); i++) {
+            com.prporter.model.ChangedFile.DiffHunk hunk = hunks.get(i);
             try {
                 System.out.println("Applying diff hunk: lines " + hunk.getStartLine() + "-" + hunk.getEndLine());
-                boolean success = applyDiffHunkIntelligently(currentLines, hunk, file.getPath(), sourceBranch);
-                if (success) {
-                    portedHunks.add("lines " + hunk.getStartLine() + "-" + hunk.getEndLine());
-                } else {
-                    failedHunks.add("lines " + hunk.getStartLine() + "-" + hunk.getEndLine());
+                HunkPlacement placement = locateHunk(target, hunk, i);
+                if (placement != null) {
+                    placements.add(placement);
+                    applications[i] = placement.application;
                 }
             } catch (Exception e) {
                 System.out.println("Failed to apply diff hunk: " + e.getMessage());
+                applications[i] = HunkApplication.failed();
+            }
+        }
+        return dropOverlaps(placements, applications);
+    }
+
+    // Placements in file order, without those overlapping one placed before them, whose hunks go back to null
+    private static List<HunkPlacement> dropOverlaps(List<HunkPlacement> placements, HunkApplication[] applications) {
+        // Stable sort, insertions at the same line keep their hunk order
+        placements.sort(Comparator.comparingInt(placement -> placement.startIndex));
+        List<HunkPlacement> accepted = new ArrayList<>(placements.size());
+        int end = 0;
+        for (HunkPlacement placement : placements) {
+            if (placement.startIndex < end) {
+                System.out.println("Hunk " + (placement.hunkIndex + 1) + " overlaps a previously located hunk");
+                applications[placement.hunkIndex] = null;
+                continue;
+            }
+            accepted.add(placement);
+            end = placement.startIndex + placement.patchHunk.oldLines().size();
+        }
+        return accepted;
+    }
+
+    private static void describeHunks(List<com.prporter.model.ChangedFile.DiffHunk> hunks, HunkApplication[] applications,
+                                      List<String> portedHunks, List<String> failedHunks) {
+        for (int i = 0; i < hunks.size(); i++) {
+            com.prporter.model.ChangedFile.DiffHunk hunk = hunks.get(i);
+            if (applications[i].isApplied()) {
+                portedHunks.add("lines " + hunk.getStartLine() + "-" + hunk.getEndLine() + applications[i].describe());
+            } else {
                 failedHunks.add("lines " + hunk.getStartLine() + "-" + hunk.getEndLine());
             }
         }
-        Files.write(filePath, currentLines);
-        git.add().addFilepattern(file.getPath()).call();
-        StringBuilder commitMessage = new StringBuilder();
-        commitMessage.append("Port changes from PR #").append(prNumber).append("\n\n");
-        if (!portedHunks.isEmpty()) {
-            commitMessage.append("Successfully ported hunks:\n");
-            for (String h : portedHunks) commitMessage.append("- ").append(h).append("\n");
+    }
+
+    // Write a prepared patch to the worktree, or stage it in-core, and commit it. In batch mode the patch is
+    // only staged until commitBatch. Commits must be serialized by the caller.
+    public void commitPatch(PreparedPatch patch, String prNumber) throws IOException, GitAPIException {
+        com.prporter.model.ChangedFile file = patch.getFile();
+        if (patch.getWholeFileStatus() != null) {
+            commitWholeFilePatch(patch, prNumber);
+            return;
         }
-        if (!failedHunks.isEmpty()) {
-            commitMessage.append("\nFailed to port hunks (manual review needed):\n");
-            for (String h : failedHunks) commitMessage.append("- ").append(h).append("\n");
+        List<String> portedHunks = patch.getPortedHunks();
+        List<String> failedHunks = patch.getFailedHunks();
+        if (batchCommit) {
+            stage(patch);
+            Collections.addAll(batchedPaths, patch.getPaths());
+            batchedFiles++;
+            batchedMessage.append("\n").append(file.getPath()).append(":\n");
+            if (patch.removedPath != null) {
+                batchedMessage.append("Renamed from ").append(patch.removedPath).append("\n");
+            }
+            if (portedHunks.isEmpty() && failedHunks.isEmpty()) {
+                batchedMessage.append("(no line hunks)\n");
+            }
+            appendHunkLists(batchedMessage, portedHunks, failedHunks);
+        } else {
+            StringBuilder commitMessage = new StringBuilder();
+            commitMessage.append("Port changes from PR #").append(prNumber).append("\n\n");
+            if (patch.removedPath != null) {
+                commitMessage.append("Renamed from ").append(patch.removedPath).append("\n");
+            }
+            appendHunkLists(commitMessage, portedHunks, failedHunks);
+            stage(patch);
+            commit(commitMessage.toString(), patch.getPaths());
         }
-        git.commit().setMessage(commitMessage.toString()).call();
         if (failedHunks.isEmpty()) {
             file.setStatus(com.prporter.model.FileStatus.PORTED);
         } else if (!portedHunks.isEmpty()) {
@@ -72,197 +405,664 @@ public class FilePatcher {
         }
     }
 
-    // Apply a diff hunk at the file level using context lines. If context does not match, call AI. If AI cannot help, flag for manual review.
-    private boolean applyDiffHunkIntelligently(List<String> currentLines, com.prporter.model.ChangedFile.DiffHunk hunk, String filePath, String sourceBranch) {
-        String[] hunkLines = hunk.getContent().split("\n");
-        
-        List<String> linesToRemove = new ArrayList<>();
-        List<String> linesToAdd = new ArrayList<>();
-        
-        // First line is hunk header, skip it.
-        // We only care about additions and removals for patching. 
-        // The original context is implicit in the lines to remove.
-        for (int i = 1; i < hunkLines.length; i++) {
-            String line = hunkLines[i];
-            if (line.startsWith("-")) {
-                linesToRemove.add(line.substring(1));
-            } else if (line.startsWith("+")) {
-                linesToAdd.add(line.substring(1));
-            } else { // Context line
-                String contextLine = line.substring(1);
-                linesToRemove.add(contextLine);
-                linesToAdd.add(contextLine);
-            }
+    private void commitWholeFilePatch(PreparedPatch patch, String prNumber) throws IOException, GitAPIException {
+        com.prporter.model.ChangedFile file = patch.getFile();
+        file.setStatus(patch.getWholeFileStatus());
+        file.setReason(patch.getSummary());
+        if (!patch.changesTree()) {
+            return;
         }
-        
-        // Find the starting index of the sublist to be replaced.
-        int startIndex = -1;
-        if (!linesToRemove.isEmpty()) {
-            for (int i = 0; i <= currentLines.size() - linesToRemove.size(); i++) {
-                if (currentLines.subList(i, i + linesToRemove.size()).equals(linesToRemove)) {
-                    startIndex = i;
-                    break;
+        stage(patch);
+        if (batchCommit) {
+            Collections.addAll(batchedPaths, patch.getPaths());
+            batchedFiles++;
+            batchedMessage.append("\n").append(file.getPath()).append(":\n").append(patch.getSummary()).append("\n");
+        } else {
+            commit("Port changes from PR #" + prNumber + "\n\n" + file.getPath() + ": " + patch.getSummary() + "\n", patch.getPaths());
+        }
+    }
+
+    // Commit everything staged in batch mode as a single commit. Returns false if nothing was staged.
+    public boolean commitBatch(String prNumber) throws IOException, GitAPIException {
+        if (batchedPaths.isEmpty()) {
+            return false;
+        }
+        String commitMessage = "Port changes from PR #" + prNumber + " (" + batchedFiles + " files)\n" + batchedMessage;
+        commit(commitMessage, batchedPaths.toArray(new String[0]));
+        batchedPaths.clear();
+        batchedFiles = 0;
+        batchedMessage.setLength(0);
+        return true;
+    }
+
+    private static void appendHunkLists(StringBuilder commitMessage, List<String> portedHunks, List<String> failedHunks) {
+        if (!portedHunks.isEmpty()) {
+            commitMessage.append("Successfully ported hunks:\n");
+            for (String h : portedHunks) commitMessage.append("- ").append(h).append("\n");
+        }
+        if (!failedHunks.isEmpty()) {
+            commitMessage.append("\nFailed to port hunks (manual review needed):\n");
+            for (String h : failedHunks) commitMessage.append("- ").append(h).append("\n");
+        }
+    }
+
+    private void stage(PreparedPatch patch) throws IOException {
+        String path = patch.getFile().getPath();
+        if (patch.deleted) {
+            remove(path);
+        } else if (patch.blobId != null) {
+            stageBlob(path, patch.blobId, patch.blobMode);
+        } else if (patch.getPatchedFile() != null) {
+            stageLargeFile(path, patch.getPatchedFile());
+        } else if (inCoreCommitter != null) {
+            inCoreCommitter.stage(path, toBytes(patch.getLines()));
+        } else {
+            Path target = git.getRepository().getWorkTree().toPath().resolve(path);
+            Files.createDirectories(target.getParent());
+            Files.write(target, patch.getLines());
+        }
+        if (patch.removedPath != null) {
+            remove(patch.removedPath);
+        }
+    }
+
+    // Write an existing blob to path, streamed out of the object database
+    private void stageBlob(String path, ObjectId blobId, FileMode mode) throws IOException {
+        if (inCoreCommitter != null) {
+            inCoreCommitter.stage(path, blobId, mode);
+            return;
+        }
+        Path target = git.getRepository().getWorkTree().toPath().resolve(path);
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        if (FileMode.SYMLINK.equals(mode)) {
+            byte[] linkTarget = repository.open(blobId, Constants.OBJ_BLOB).getCachedBytes();
+            Files.createSymbolicLink(target, Paths.get(new String(linkTarget, StandardCharsets.UTF_8)));
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(target)) {
+            repository.open(blobId, Constants.OBJ_BLOB).copyTo(out);
+        }
+        if (FileMode.EXECUTABLE_FILE.equals(mode)) {
+            target.toFile().setExecutable(true);
+        }
+    }
+
+    private void remove(String path) throws IOException {
+        if (inCoreCommitter != null) {
+            inCoreCommitter.delete(path);
+        } else {
+            Files.deleteIfExists(git.getRepository().getWorkTree().toPath().resolve(path));
+        }
+    }
+
+    // Stream a large-file patch result into the branch. The worktree file is overwritten in place rather
+    // than replaced, so it keeps its permissions.
+    private void stageLargeFile(String path, Path patched) throws IOException {
+        try {
+            if (inCoreCommitter != null) {
+                inCoreCommitter.stage(path, patched);
+                return;
+            }
+            Path target = git.getRepository().getWorkTree().toPath().resolve(path);
+            // A renamed file is staged at a path that may not exist yet
+            Files.createDirectories(target.getParent());
+            try (FileChannel in = FileChannel.open(patched, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                for (long copied = 0; copied < size; ) {
+                    copied += out.transferFrom(in, copied, size - copied);
                 }
             }
-        } else if (!linesToAdd.isEmpty()) {
-            // This case handles pure additions. We need a better way to find the position.
-            // For now, we will rely on the hunk's start line. This is not ideal.
-             int hunkStart = hunk.getStartLine() -1;
-             if(hunkStart >= 0 && hunkStart <= currentLines.size()){
-                startIndex = hunkStart;
-             }
+        } finally {
+            deleteTemp(patched);
         }
+    }
 
+    private Path createLargeFileTemp() throws IOException {
+        Path directory = repository.getDirectory().toPath().resolve("pr-porter").resolve("large-files");
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "patch-", ".tmp");
+    }
 
-        if (startIndex != -1) {
-            // Found a match, apply the patch
-            List<String> tempLines = new ArrayList<>(currentLines);
-            
-            // Remove the old lines
-            if (!linesToRemove.isEmpty()) {
-                tempLines.subList(startIndex, startIndex + linesToRemove.size()).clear();
-            }
-            
-            // Add the new lines
-            tempLines.addAll(startIndex, linesToAdd);
+    // A file that is still mapped cannot be deleted on every platform, leave it for exit then
+    private static void deleteTemp(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
 
-            currentLines.clear();
-            currentLines.addAll(tempLines);
-            return true;
-        } else {
-            // Context does not match, call AI for intent-preserving patching
-            System.out.println("[AI PATCH] Context does not match for hunk at lines " + hunk.getStartLine() + "-" + hunk.getEndLine() + ". Calling AI for help.");
-            
-            // Check if AI patching is disabled
-            String disableAiPatching = System.getenv("DISABLE_AI_PATCHING");
-            if ("true".equalsIgnoreCase(disableAiPatching) || "1".equals(disableAiPatching)) {
-                System.out.println("[AI PATCH] AI patching is disabled via DISABLE_AI_PATCHING environment variable. Flagging for manual review.");
-                return false;
-            }
-            
-            String aiPrompt =
-                "You are a code migration assistant.\n\n" +
-                "Here is a diff hunk from a PR that could not be applied cleanly to the target file.\n" +
-                "Please apply the intent of the change to the target file, adapting as needed.\n" +
-                "If you cannot do this safely, reply: MANUAL REVIEW NEEDED.\n" +
-                "\nDiff hunk:\n```diff\n" + hunk.getContent() + "\n```\n" +
-                "\nCurrent target file content:\n```java\n" + String.join("\n", currentLines) + "\n```\n";
-            String aiResult = callOpenAIApi(aiPrompt);
-            if (aiResult != null && !aiResult.trim().equalsIgnoreCase("MANUAL REVIEW NEEDED")) {
-                // Replace the file content with the AI's suggestion
-                currentLines.clear();
-                for (String l : aiResult.split("\n")) currentLines.add(l);
-                return true;
+    // Size of the file on the port branch
+    private long targetSize(String path) throws IOException {
+        if (inCoreCommitter == null) {
+            return Files.size(git.getRepository().getWorkTree().toPath().resolve(path));
+        }
+        long size = inCoreCommitter.size(path);
+        if (size < 0) {
+            throw new NoSuchFileException(path);
+        }
+        return size;
+    }
+
+    // One git add for all the paths, so the index is rewritten once per commit
+    private void commit(String message, String... paths) throws IOException, GitAPIException {
+        if (inCoreCommitter != null) {
+            inCoreCommitter.commit(message);
+            return;
+        }
+        AddCommand add = git.add();
+        RmCommand rm = git.rm().setCached(true);
+        boolean adding = false;
+        boolean removing = false;
+        for (String path : paths) {
+            if (Files.exists(git.getRepository().getWorkTree().toPath().resolve(path), LinkOption.NOFOLLOW_LINKS)) {
+                add.addFilepattern(path);
+                adding = true;
             } else {
-                System.out.println("[AI PATCH] AI could not help. Flagging for manual review.");
-                return false;
+                rm.addFilepattern(path);
+                removing = true;
             }
         }
+        if (adding) {
+            add.call();
+        }
+        if (removing) {
+            rm.call();
+        }
+        git.commit().setMessage(message).call();
     }
 
-    // Call OpenAI API with the prompt and return the response
-    private String callOpenAIApi(String prompt) {
-        String apiKey = System.getenv("OPENAI_API_KEY");
-        if (apiKey == null || apiKey.isEmpty()) {
-            System.out.println("[AI PATCH] No OpenAI API key found in environment variable OPENAI_API_KEY.");
+    // Lines of the file as they are on the port branch, split the same way Files.readAllLines does
+    private List<String> readTargetLines(String path) throws IOException {
+        if (inCoreCommitter == null) {
+            return Files.readAllLines(git.getRepository().getWorkTree().toPath().resolve(path));
+        }
+        byte[] content = inCoreCommitter.read(path);
+        if (content == null) {
+            throw new NoSuchFileException(path);
+        }
+        // Malformed input fails with MalformedInputException as in Files.readAllLines, instead of being replaced
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), decoder))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // Same bytes Files.write produces for the lines: UTF-8, every line terminated by the platform separator
+    private static byte[] toBytes(List<String> lines) {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append(System.lineSeparator());
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Locate a diff hunk in the unpatched file using its context lines, retrying with fuzz and optionally
+    // ignoring whitespace. Returns null if the hunk cannot be placed locally.
+    private HunkPlacement locateHunk(PatchTarget target, com.prporter.model.ChangedFile.DiffHunk hunk, int hunkIndex) {
+        return locateHunk(target, PatchHunk.parse(hunk), expectedIndex(hunk), hunkIndex);
+    }
+
+    // Index of the hunk's first old line; a hunk without old lines is inserted after its start line
+    private static int expectedIndex(com.prporter.model.ChangedFile.DiffHunk hunk) {
+        boolean hasOldLines = hunk.getEndLine() >= hunk.getStartLine();
+        return hasOldLines ? hunk.getStartLine() - 1 : hunk.getStartLine();
+    }
+
+    private HunkPlacement locateHunk(PatchTarget target, PatchHunk patchHunk, int expectedIndex, int hunkIndex) {
+        if (patchHunk.oldLines().isEmpty()) {
+            // Pure addition without context: nothing to match, rely on the hunk's start line
+            if (expectedIndex >= 0 && expectedIndex <= target.lineCount()) {
+                return new HunkPlacement(hunkIndex, expectedIndex, patchHunk, HunkApplication.located(0, 0, false));
+            }
             return null;
         }
-        String endpoint = "https://api.openai.com/v1/chat/completions";
-        OkHttpClient client = new OkHttpClient();
-        MediaType mediaType = MediaType.parse("application/json");
-        Gson gson = new Gson();
-        JsonObject body = new JsonObject();
-        body.addProperty("model", "gpt-3.5-turbo");
-        JsonArray messages = new JsonArray();
-        JsonObject userMsg = new JsonObject();
-        userMsg.addProperty("role", "user");
-        userMsg.addProperty("content", prompt);
-        messages.add(userMsg);
-        body.add("messages", messages);
-        body.addProperty("max_tokens", 2048);
-        String requestBody = gson.toJson(body);
-        Request request = new Request.Builder()
-                .url(endpoint)
-                .post(RequestBody.create(mediaType, requestBody))
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .addHeader("Content-Type", "application/json")
-                .build();
-        
-        // Improved rate limiting with exponential backoff
-        int maxRetries = 5;
-        int baseDelayMs = 1000; // Start with 1 second
-        
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try (Response response = client.newCall(request).execute()) {
-                if (response.code() == 429) {
-                    // Calculate exponential backoff delay
-                    int delayMs = baseDelayMs * (int) Math.pow(2, attempt);
-                    System.out.println("[AI PATCH] OpenAI API rate limit exceeded (429). Waiting " + (delayMs/1000) + " seconds before retry " + (attempt + 1) + "/" + maxRetries + "...");
-                    
-                    // Check for Retry-After header
-                    String retryAfter = response.header("Retry-After");
-                    if (retryAfter != null) {
-                        try {
-                            int retryAfterSeconds = Integer.parseInt(retryAfter);
-                            delayMs = retryAfterSeconds * 1000;
-                            System.out.println("[AI PATCH] Using server-suggested retry delay: " + retryAfterSeconds + " seconds");
-                        } catch (NumberFormatException e) {
-                            // Use exponential backoff if Retry-After is invalid
-                        }
-                    }
-                    
-                    Thread.sleep(delayMs);
+
+        HunkPlacement placement = locate(target, patchHunk, hunkIndex, expectedIndex, false);
+        if (placement == null && ignoreWhitespace) {
+            placement = locate(target, patchHunk, hunkIndex, expectedIndex, true);
+        }
+        if (placement != null) {
+            HunkApplication application = placement.application;
+            if (application.getOffset() != 0 || application.getFuzz() > 0 || application.isWhitespaceIgnored()) {
+                System.out.println("Located hunk" + application.describe());
+            }
+        }
+        return placement;
+    }
+
+    // Find the hunk's old lines at increasing fuzz, dropping up to `fuzz` context lines from each end
+    private HunkPlacement locate(PatchTarget target, PatchHunk patchHunk, int hunkIndex, int expectedIndex, boolean whitespaceInsensitive) {
+        BlockFinder finder = whitespaceInsensitive ? target.whitespaceFinder() : target.exactFinder();
+        if (finder == null) {
+            return null;
+        }
+        for (int fuzz = 0; fuzz <= maxFuzz; fuzz++) {
+            PatchHunk trimmed = patchHunk.trimContext(fuzz, fuzz);
+            if (fuzz > patchHunk.leadingContext() && fuzz > patchHunk.trailingContext()) {
+                // No more context left to drop
+                break;
+            }
+            List<String> oldLines = trimmed.oldLines();
+            if (oldLines.isEmpty()) {
+                break;
+            }
+            int droppedLeading = Math.min(fuzz, patchHunk.leadingContext());
+            int startIndex = finder.find(oldLines, expectedIndex + droppedLeading);
+            if (startIndex != -1) {
+                return new HunkPlacement(hunkIndex, startIndex, trimmed,
+                        HunkApplication.located(startIndex - (expectedIndex + droppedLeading), fuzz, whitespaceInsensitive));
+            }
+        }
+        return null;
+    }
+
+    // Build the patched file in one pass over the original lines, given non-overlapping placements in file
+    // order. Context lines keep the file's own text, so a whitespace-insensitive match does not rewrite them.
+    private List<String> splice(List<String> originalLines, List<HunkPlacement> placements) {
+        List<String> output = new ArrayList<>(originalLines.size() + 16);
+        int copied = 0;
+        for (HunkPlacement placement : placements) {
+            output.addAll(originalLines.subList(copied, placement.startIndex));
+            PatchHunk patchHunk = placement.patchHunk;
+            int fileIndex = placement.startIndex;
+            for (int i = 0; i < patchHunk.size(); i++) {
+                char kind = patchHunk.kindAt(i);
+                if (kind == PatchHunk.CONTEXT) {
+                    output.add(originalLines.get(fileIndex++));
+                } else if (kind == PatchHunk.REMOVED) {
+                    fileIndex++;
+                } else {
+                    output.add(patchHunk.textAt(i));
+                }
+            }
+            copied = fileIndex;
+        }
+        output.addAll(originalLines.subList(copied, originalLines.size()));
+        return output;
+    }
+
+    // The same splice over a mapped file, streamed to out. Untouched lines, including a hunk's context lines,
+    // are copied as byte ranges with their original line endings; added lines get the file's own separator.
+    private static void splice(MappedLineIndex index, List<HunkPlacement> placements, FileChannel out) throws IOException {
+        byte[] separator = index.lineSeparator();
+        // Lines before `copied` have been written or dropped
+        int copied = 0;
+        boolean terminated = true;
+        for (HunkPlacement placement : placements) {
+            PatchHunk patchHunk = placement.patchHunk;
+            int fileIndex = placement.startIndex;
+            for (int i = 0; i < patchHunk.size(); i++) {
+                char kind = patchHunk.kindAt(i);
+                if (kind == PatchHunk.CONTEXT) {
+                    fileIndex++;
                     continue;
                 }
-                
-                if (!response.isSuccessful()) {
-                    System.out.println("[AI PATCH] OpenAI API call failed with status " + response.code() + ": " + response.message());
-                    if (response.code() >= 500) {
-                        // Server error, retry with exponential backoff
-                        int delayMs = baseDelayMs * (int) Math.pow(2, attempt);
-                        System.out.println("[AI PATCH] Server error detected. Waiting " + (delayMs/1000) + " seconds before retry " + (attempt + 1) + "/" + maxRetries + "...");
-                        Thread.sleep(delayMs);
-                        continue;
-                    }
-                    return null;
+                if (copied < fileIndex) {
+                    terminated = index.copyLines(copied, fileIndex, out);
                 }
-                
-                String responseBody = response.body().string();
-                int contentIndex = responseBody.indexOf("\"content\":");
-                if (contentIndex != -1) {
-                    int start = responseBody.indexOf('"', contentIndex + 11) + 1;
-                    int end = responseBody.indexOf('"', start);
-                    if (start != -1 && end != -1 && end > start) {
-                        String content = responseBody.substring(start, end);
-                        content = content.replaceAll("^```[a-zA-Z]*\\n|```$", "").trim();
-                        return content;
+                if (kind == PatchHunk.REMOVED) {
+                    fileIndex++;
+                } else {
+                    // Only the file's unterminated last line can come right before this
+                    ByteBuffer line = ByteBuffer.wrap(concat(terminated ? new byte[0] : separator,
+                            patchHunk.textAt(i).getBytes(StandardCharsets.UTF_8), separator));
+                    while (line.hasRemaining()) {
+                        out.write(line);
                     }
+                    terminated = true;
                 }
+                copied = fileIndex;
+            }
+        }
+        index.copyLines(copied, index.lineCount(), out);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second, byte[] third) {
+        byte[] result = new byte[first.length + second.length + third.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        System.arraycopy(third, 0, result, first.length + second.length, third.length);
+        return result;
+    }
+
+    // Context does not match, call AI for intent-preserving patching. If AI cannot help, flag for manual review.
+    private CompletableFuture<HunkApplication> applyWithAI(List<String> currentLines, LineShifts shifts, com.prporter.model.ChangedFile.DiffHunk hunk) {
+        System.out.println("[AI PATCH] Context does not match for hunk at lines " + hunk.getStartLine() + "-" + hunk.getEndLine() + ". Calling AI for help.");
+        
+        // Check if AI patching is disabled
+        String disableAiPatching = System.getenv("DISABLE_AI_PATCHING");
+        if ("true".equalsIgnoreCase(disableAiPatching) || "1".equals(disableAiPatching)) {
+            System.out.println("[AI PATCH] AI patching is disabled via DISABLE_AI_PATCHING environment variable. Flagging for manual review.");
+            return CompletableFuture.completedFuture(HunkApplication.failed());
+        }
+        if (aiPromptWindow > 0) {
+            return applyWithWindowedAI(currentLines, shifts, hunk);
+        }
+        
+        String aiPrompt =
+            "You are a code migration assistant.\n\n" +
+            "Here is a diff hunk from a PR that could not be applied cleanly to the target file.\n" +
+            "Please apply the intent of the change to the target file, adapting as needed.\n" +
+            "If you cannot do this safely, reply: MANUAL REVIEW NEEDED.\n" +
+            "\nDiff hunk:\n```diff\n" + hunk.getContent() + "\n```\n" +
+            "\nCurrent target file content:\n```java\n" + String.join("\n", currentLines) + "\n```\n";
+        return askAI(aiPrompt, hunk, "full-file", currentLines, line -> true, aiResult -> {
+            if (aiResult != null && !aiResult.trim().equalsIgnoreCase("MANUAL REVIEW NEEDED")) {
+                // Replace the file content with the AI's suggestion
+                currentLines.clear();
+                for (String l : aiResult.split("\n")) currentLines.add(l);
+                return HunkApplication.aiAssisted();
+            } else {
+                System.out.println("[AI PATCH] AI could not help. Flagging for manual review.");
+                return HunkApplication.failed();
+            }
+        });
+    }
+
+    // Send only a window of lines around the hunk's expected position and apply the unified diff the AI
+    // replies with to that window, leaving the rest of the file untouched
+    private CompletableFuture<HunkApplication> applyWithWindowedAI(List<String> currentLines, LineShifts shifts, com.prporter.model.ChangedFile.DiffHunk hunk) {
+        int originalIndex = expectedIndex(hunk);
+        int center = Math.max(0, Math.min(currentLines.size(), shifts.toPatched(originalIndex)));
+        int span = PatchHunk.parse(hunk).oldLines().size();
+        int from = Math.max(0, center - aiPromptWindow);
+        int to = Math.min(currentLines.size(), center + span + aiPromptWindow);
+        List<String> window = new ArrayList<>(currentLines.subList(from, to));
+
+        String aiPrompt =
+            "You are a code migration assistant.\n\n" +
+            "Here is a diff hunk from a PR that could not be applied cleanly to the target file, followed by\n" +
+            "lines " + (from + 1) + "-" + to + " of the target file.\n" +
+            "Reply with a unified diff against those lines, using the same line numbers, that applies the intent\n" +
+            "of the change. Reply with the diff only.\n" +
+            "If you cannot do this safely, reply: MANUAL REVIEW NEEDED.\n" +
+            "\nDiff hunk:\n```diff\n" + hunk.getContent() + "\n```\n" +
+            "\nTarget file lines " + (from + 1) + "-" + to + ":\n```java\n" + String.join("\n", window) + "\n```\n";
+        return askAI(aiPrompt, hunk, "window:" + (from + 1), window, new DiffReplyCheck(), aiResult -> {
+            if (aiResult == null || aiResult.trim().equalsIgnoreCase("MANUAL REVIEW NEEDED")) {
+                System.out.println("[AI PATCH] AI could not help. Flagging for manual review.");
+                return HunkApplication.failed();
+            }
+            List<String> patchedWindow = applyReplyDiff(window, from, aiResult);
+            if (patchedWindow == null) {
+                System.out.println("[AI PATCH] AI reply is not a diff that applies to lines " + (from + 1) + "-" + to + ". Flagging for manual review.");
+                return HunkApplication.failed();
+            }
+            currentLines.subList(from, to).clear();
+            currentLines.addAll(from, patchedWindow);
+            shifts.add(originalIndex, patchedWindow.size() - window.size());
+            return HunkApplication.aiAssisted();
+        });
+    }
+
+    // Apply every hunk of the AI's diff to the window, or return null if any of them does not apply
+    private List<String> applyReplyDiff(List<String> window, int windowStart, String reply) {
+        List<PatchHunk> replyHunks = PatchHunk.parseAll(reply);
+        if (replyHunks.isEmpty()) {
+            return null;
+        }
+        PatchTarget target = new PatchTarget(window);
+        HunkApplication[] applications = new HunkApplication[replyHunks.size()];
+        List<HunkPlacement> placements = new ArrayList<>();
+        for (int i = 0; i < replyHunks.size(); i++) {
+            PatchHunk replyHunk = replyHunks.get(i);
+            int oldStart = Math.max(replyHunk.oldStart(), 1);
+            int expectedIndex = (replyHunk.oldLines().isEmpty() ? oldStart : oldStart - 1) - windowStart;
+            HunkPlacement placement = locateHunk(target, replyHunk, expectedIndex, i);
+            if (placement == null) {
                 return null;
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.out.println("[AI PATCH] API call interrupted");
+            }
+            placements.add(placement);
+            applications[i] = placement.application;
+        }
+        List<String> patchedWindow = splice(window, dropOverlaps(placements, applications));
+        for (HunkApplication application : applications) {
+            if (application == null) {
                 return null;
-            } catch (Exception e) {
-                System.out.println("[AI PATCH] Exception calling OpenAI API: " + e.getMessage());
-                if (attempt < maxRetries - 1) {
-                    // Retry on network errors with exponential backoff
-                    int delayMs = baseDelayMs * (int) Math.pow(2, attempt);
-                    try {
-                        System.out.println("[AI PATCH] Network error detected. Waiting " + (delayMs/1000) + " seconds before retry " + (attempt + 1) + "/" + maxRetries + "...");
-                        Thread.sleep(delayMs);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        return null;
-                    }
-                    continue;
-                }
+            }
+        }
+        return patchedWindow;
+    }
+
+    // Reply to the prompt from the AI response cache or the AI client and apply the reply; the cache key covers
+    // the hunk, the target lines the prompt was built from and how they were sent. Only a reply that applied is
+    // cached, so a refusal or an unusable diff is asked for again on the next run.
+    private CompletableFuture<HunkApplication> askAI(String aiPrompt, com.prporter.model.ChangedFile.DiffHunk hunk, String promptMode,
+                                                     List<String> targetLines, Predicate<String> lineCheck,
+                                                     Function<String, HunkApplication> applyReply) {
+        AIPatchClient client = aiClient();
+        String cacheKey = aiCache == null ? null : AIResponseCache.key(client.getModelParameters(), promptMode,
+                hunk.getContent(), new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, toBytes(targetLines)).name());
+        String cached = cacheKey == null ? null : aiCache.get(cacheKey);
+        if (cached != null) {
+            System.out.println("[AI PATCH] Using cached AI response for hunk at lines " + hunk.getStartLine() + "-" + hunk.getEndLine());
+            return CompletableFuture.completedFuture(applyReply.apply(cached));
+        }
+        return client.complete(aiPrompt, lineCheck).thenApply(aiResult -> {
+            HunkApplication application = applyReply.apply(aiResult);
+            if (application.isApplied() && cacheKey != null) {
+                aiCache.put(cacheKey, aiResult);
+            }
+            return application;
+        });
+    }
+
+    private synchronized AIPatchClient aiClient() {
+        if (aiClient == null) {
+            aiClient = new AIPatchClient(System.getenv("OPENAI_API_KEY"), 4, 2);
+        }
+        return aiClient;
+    }
+
+    // The unpatched file with its lazily built indexes, either as lines or as a mapped large file
+    private static class PatchTarget {
+        private final List<String> lines;
+        private final MappedLineIndex mappedIndex;
+        private HunkLocator exactLocator;
+        private HunkLocator whitespaceLocator;
+
+        PatchTarget(List<String> lines) {
+            this.lines = lines;
+            this.mappedIndex = null;
+        }
+
+        PatchTarget(MappedLineIndex mappedIndex) {
+            this.lines = null;
+            this.mappedIndex = mappedIndex;
+        }
+
+        int lineCount() {
+            return mappedIndex != null ? mappedIndex.lineCount() : lines.size();
+        }
+
+        BlockFinder exactFinder() {
+            if (mappedIndex != null) {
+                return mappedIndex;
+            }
+            if (exactLocator == null) {
+                exactLocator = new HunkLocator(lines);
+            }
+            return exactLocator;
+        }
+
+        // null for a mapped file, which is only matched exactly
+        BlockFinder whitespaceFinder() {
+            if (mappedIndex != null) {
                 return null;
             }
+            if (whitespaceLocator == null) {
+                whitespaceLocator = new HunkLocator(lines, true);
+            }
+            return whitespaceLocator;
+        }
+    }
+
+    // Rejects a windowed AI reply as soon as it stops looking like a unified diff, so a streamed reply can be
+    // abandoned before it is complete
+    private static class DiffReplyCheck implements Predicate<String> {
+        private static final int MAX_PREAMBLE_LINES = 10;
+
+        private int preambleLines;
+        private boolean inDiff;
+        private boolean diffClosed;
+
+        @Override
+        public boolean test(String line) {
+            if (diffClosed || line.trim().equalsIgnoreCase("MANUAL REVIEW NEEDED")) {
+                return true;
+            }
+            if (!inDiff) {
+                inDiff = line.startsWith("@@");
+                return inDiff || ++preambleLines <= MAX_PREAMBLE_LINES;
+            }
+            if (line.startsWith("```")) {
+                diffClosed = true;
+                return true;
+            }
+            return line.isEmpty() || line.startsWith("@@") || line.startsWith("\\")
+                    || line.charAt(0) == PatchHunk.CONTEXT || line.charAt(0) == PatchHunk.ADDED || line.charAt(0) == PatchHunk.REMOVED;
+        }
+    }
+
+    // Line count changes of the edits applied so far, to map a line of the unpatched file into the patched one
+    private static class LineShifts {
+        private final List<int[]> shifts = new ArrayList<>();
+
+        void add(int originalIndex, int delta) {
+            shifts.add(new int[] {originalIndex, delta});
+        }
+
+        int toPatched(int originalIndex) {
+            int patchedIndex = originalIndex;
+            for (int[] shift : shifts) {
+                if (shift[0] < originalIndex) {
+                    patchedIndex += shift[1];
+                }
+            }
+            return patchedIndex;
+        }
+    }
+
+    // Where a located hunk goes in the unpatched file, with the (possibly fuzz-trimmed) hunk to apply there
+    private static class HunkPlacement {
+        private final int hunkIndex;
+        private final int startIndex;
+        private final PatchHunk patchHunk;
+        private final HunkApplication application;
+
+        HunkPlacement(int hunkIndex, int startIndex, PatchHunk patchHunk, HunkApplication application) {
+            this.hunkIndex = hunkIndex;
+            this.startIndex = startIndex;
+            this.patchHunk = patchHunk;
+            this.application = application;
+        }
+    }
+
+    public static class PreparedPatch {
+        private final com.prporter.model.ChangedFile file;
+        private final List<String> lines;
+        private final Path patchedFile;
+        private final List<String> portedHunks;
+        private final List<String> failedHunks;
+        // Whole-file outcome, null for a line-based patch
+        private FileStatus wholeFileStatus;
+        private String summary;
+        // Existing blob that becomes the file's content
+        private ObjectId blobId;
+        private FileMode blobMode;
+        private boolean deleted;
+        // Also removed from the branch, the old path of a rename
+        private String removedPath;
+
+        public PreparedPatch(com.prporter.model.ChangedFile file, List<String> lines, List<String> portedHunks, List<String> failedHunks) {
+            this(file, lines, null, portedHunks, failedHunks);
+        }
+
+        // A large-file patch, its result already streamed to a temporary file
+        public PreparedPatch(com.prporter.model.ChangedFile file, Path patchedFile, List<String> portedHunks, List<String> failedHunks) {
+            this(file, null, patchedFile, portedHunks, failedHunks);
+        }
+
+        private PreparedPatch(com.prporter.model.ChangedFile file, List<String> lines, Path patchedFile,
+                              List<String> portedHunks, List<String> failedHunks) {
+            this.file = file;
+            this.lines = lines;
+            this.patchedFile = patchedFile;
+            this.portedHunks = portedHunks;
+            this.failedHunks = failedHunks;
+        }
+
+        public com.prporter.model.ChangedFile getFile() {
+            return file;
+        }
+
+        // The file becomes an existing blob as is
+        static PreparedPatch wholeBlob(com.prporter.model.ChangedFile file, FileStatus status, String summary, ObjectId blobId, FileMode mode) {
+            PreparedPatch patch = unchanged(file, status, summary);
+            patch.blobId = blobId;
+            patch.blobMode = mode;
+            return patch;
+        }
+
+        static PreparedPatch deletion(com.prporter.model.ChangedFile file, String summary) {
+            PreparedPatch patch = unchanged(file, FileStatus.DELETED, summary);
+            patch.deleted = true;
+            return patch;
+        }
+
+        // Nothing to write, the branch already is as the PR wants it or the file is skipped
+        static PreparedPatch unchanged(com.prporter.model.ChangedFile file, FileStatus status, String summary) {
+            PreparedPatch patch = new PreparedPatch(file, null, null, new ArrayList<>(), new ArrayList<>());
+            patch.wholeFileStatus = status;
+            patch.summary = summary;
+            return patch;
+        }
+
+        // Status of a whole-file fast path, null for a line-based patch
+        public FileStatus getWholeFileStatus() {
+            return wholeFileStatus;
+        }
+
+        public String getSummary() {
+            return summary;
+        }
+
+        boolean changesTree() {
+            return deleted || blobId != null || removedPath != null;
+        }
+
+        // Paths the patch writes or removes
+        String[] getPaths() {
+            return removedPath == null ? new String[] {file.getPath()} : new String[] {file.getPath(), removedPath};
+        }
+
+        // Patched lines, null for a large-file patch
+        public List<String> getLines() {
+            return lines;
+        }
+
+        // Temporary file holding a large-file patch result, null otherwise
+        public Path getPatchedFile() {
+            return patchedFile;
+        }
+
+        public List<String> getPortedHunks() {
+            return portedHunks;
+        }
+
+        public List<String> getFailedHunks() {
+            return failedHunks;
         }
-        
-        System.out.println("[AI PATCH] OpenAI API call failed after " + maxRetries + " retries due to rate limiting or persistent errors.");
-        return null;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.prporter.patcher;
+
+/**
+ * How a single hunk ended up in the target file: where it matched relative to its expected line,
+ * how much context had to be dropped, or whether the AI fallback applied it.
+ */
+public class HunkApplication {
+    private static final HunkApplication FAILED = new HunkApplication(false, 0, 0, false, false);
+    private static final HunkApplication AI = new HunkApplication(true, 0, 0, false, true);
+
+    private final boolean applied;
+    private final int offset;
+    private final int fuzz;
+    private final boolean whitespaceIgnored;
+    private final boolean aiAssisted;
+
+    private HunkApplication(boolean applied, int offset, int fuzz, boolean whitespaceIgnored, boolean aiAssisted) {
+        this.applied = applied;
+        this.offset = offset;
+        this.fuzz = fuzz;
+        this.whitespaceIgnored = whitespaceIgnored;
+        this.aiAssisted = aiAssisted;
+    }
+
+    public static HunkApplication failed() {
+        return FAILED;
+    }
+
+    public static HunkApplication aiAssisted() {
+        return AI;
+    }
+
+    public static HunkApplication located(int offset, int fuzz, boolean whitespaceIgnored) {
+        return new HunkApplication(true, offset, fuzz, whitespaceIgnored, false);
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getFuzz() {
+        return fuzz;
+    }
+
+    public boolean isWhitespaceIgnored() {
+        return whitespaceIgnored;
+    }
+
+    public boolean isAiAssisted() {
+        return aiAssisted;
+    }
+
+    // Suffix for the hunk's entry in the commit message, empty for a clean match
+    public String describe() {
+        if (aiAssisted) {
+            return " (AI-assisted)";
+        }
+        StringBuilder details = new StringBuilder();
+        if (offset != 0) {
+            details.append("offset ").append(offset > 0 ? "+" : "").append(offset);
+        }
+        if (fuzz > 0) {
+            details.append(details.length() > 0 ? ", " : "").append("fuzz ").append(fuzz);
+        }
+        if (whitespaceIgnored) {
+            details.append(details.length() > 0 ? ", " : "").append("whitespace ignored");
+        }
+        return details.length() == 0 ? "" : " (" + details + ")";
+    }
+}
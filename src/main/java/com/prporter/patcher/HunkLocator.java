@@ -0,0 +1,131 @@
+package com.prporter.patcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds where a block of lines occurs in a file. Every line of the file is hashed once into a
+ * chained hash table. A lookup anchors on the rarest line of the block and only verifies the
+ * positions where that line occurs, closest to the expected position first.
+ * A whitespace-insensitive locator compares lines with runs of whitespace collapsed and ends trimmed.
+ */
+public class HunkLocator implements BlockFinder {
+    private static final int NONE = -1;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final List<String> lines;
+    private final boolean ignoreWhitespace;
+    private final int[] hashes;
+    private final int[] buckets;
+    private final int[] next;
+    private final int mask;
+
+    public HunkLocator(List<String> lines) {
+        this(lines, false);
+    }
+
+    public HunkLocator(List<String> lines, boolean ignoreWhitespace) {
+        this.ignoreWhitespace = ignoreWhitespace;
+        this.lines = ignoreWhitespace ? normalizeAll(lines) : lines;
+        int size = this.lines.size();
+        int tableSize = Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1;
+        this.mask = tableSize - 1;
+        this.hashes = new int[size];
+        this.buckets = new int[tableSize];
+        this.next = new int[size];
+        Arrays.fill(buckets, NONE);
+        // Insert back to front so every chain lists its lines in file order
+        for (int i = size - 1; i >= 0; i--) {
+            int hash = this.lines.get(i).hashCode();
+            hashes[i] = hash;
+            int bucket = bucketOf(hash);
+            next[i] = buckets[bucket];
+            buckets[bucket] = i;
+        }
+    }
+
+    @Override
+    public int find(List<String> block, int expectedIndex) {
+        if (block.isEmpty() || block.size() > lines.size()) {
+            return NONE;
+        }
+        if (ignoreWhitespace) {
+            block = normalizeAll(block);
+        }
+
+        int[] blockHashes = new int[block.size()];
+        int anchor = 0;
+        int anchorCount = Integer.MAX_VALUE;
+        for (int i = 0; i < block.size(); i++) {
+            blockHashes[i] = block.get(i).hashCode();
+            int count = countOccurrences(block.get(i), blockHashes[i], anchorCount);
+            if (count == 0) {
+                return NONE;
+            }
+            if (count < anchorCount) {
+                anchor = i;
+                anchorCount = count;
+            }
+        }
+
+        // Candidate starts implied by each occurrence of the anchor line
+        int[] candidates = new int[anchorCount];
+        int candidateCount = 0;
+        String anchorLine = block.get(anchor);
+        for (int i = buckets[bucketOf(blockHashes[anchor])]; i != NONE; i = next[i]) {
+            if (hashes[i] == blockHashes[anchor] && lines.get(i).equals(anchorLine)) {
+                int start = i - anchor;
+                if (start >= 0 && start + block.size() <= lines.size()) {
+                    candidates[candidateCount++] = start;
+                }
+            }
+        }
+
+        // Only verify candidates nearer to the expected position than the best match so far, earlier position wins a tie
+        int best = NONE;
+        long bestDistance = Long.MAX_VALUE;
+        for (int c = 0; c < candidateCount; c++) {
+            int start = candidates[c];
+            long distance = Math.abs((long) start - expectedIndex);
+            if (distance < bestDistance && matchesAt(start, block, blockHashes)) {
+                best = start;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private boolean matchesAt(int start, List<String> block, int[] blockHashes) {
+        for (int j = 0; j < block.size(); j++) {
+            if (hashes[start + j] != blockHashes[j] || !lines.get(start + j).equals(block.get(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Occurrences of line in the file, counting stops once it reaches limit
+    private int countOccurrences(String line, int hash, int limit) {
+        int count = 0;
+        for (int i = buckets[bucketOf(hash)]; i != NONE && count < limit; i = next[i]) {
+            if (hashes[i] == hash && lines.get(i).equals(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> normalizeAll(List<String> lines) {
+        List<String> normalized = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            normalized.add(WHITESPACE.matcher(line.trim()).replaceAll(" "));
+        }
+        return normalized;
+    }
+
+    private int bucketOf(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
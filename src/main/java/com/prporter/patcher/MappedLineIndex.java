@@ -0,0 +1,221 @@
+package com.prporter.patcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Line index over a memory-mapped file, for target files too large to hold as one String per line.
+ * The file is scanned once into int arrays of line start offsets and line hashes, chained the same way
+ * as in HunkLocator, and blocks of lines are matched against the mapped bytes. Lines end at '\n'; a
+ * trailing '\r' is not part of the line, as with Files.readAllLines. Content is compared as UTF-8 bytes.
+ */
+public class MappedLineIndex implements BlockFinder {
+    private static final int NONE = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int lineCount;
+    // lineStarts[i] is where line i starts, lineStarts[lineCount] the end of the file
+    private final int[] lineStarts;
+    private final int[] hashes;
+    private final int[] buckets;
+    private final int[] next;
+    private final int mask;
+    private final byte[] lineSeparator;
+
+    public MappedLineIndex(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map (" + size + " bytes)");
+            }
+            // The mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int size = buffer.limit();
+
+        // Count first so the arrays are allocated once at their final size
+        int lines = 0;
+        for (int i = 0; i < size; i++) {
+            if (buffer.get(i) == '\n') {
+                lines++;
+            }
+        }
+        if (size > 0 && buffer.get(size - 1) != '\n') {
+            // Last line without a terminator
+            lines++;
+        }
+        this.lineCount = lines;
+        this.lineStarts = new int[lines + 1];
+        this.hashes = new int[lines];
+        int line = 0;
+        int start = 0;
+        for (int i = 0; i < size; i++) {
+            if (buffer.get(i) == '\n') {
+                lineStarts[line] = start;
+                hashes[line++] = hashOf(start, i);
+                start = i + 1;
+            }
+        }
+        if (line < lines) {
+            lineStarts[line] = start;
+            hashes[line] = hashOf(start, size);
+        }
+        lineStarts[lines] = size;
+
+        // Between one and two buckets per line
+        int tableSize = Integer.highestOneBit(Math.max(16, lines * 2 - 1));
+        this.mask = tableSize - 1;
+        this.buckets = new int[tableSize];
+        this.next = new int[lines];
+        Arrays.fill(buckets, NONE);
+        // Insert back to front so every chain lists its lines in file order
+        for (int i = lines - 1; i >= 0; i--) {
+            int bucket = bucketOf(hashes[i]);
+            next[i] = buckets[bucket];
+            buckets[bucket] = i;
+        }
+
+        // New lines get the terminator the file already uses
+        int firstEnd = lines > 0 ? lineStarts[1] - 1 : -1;
+        if (firstEnd >= 0 && buffer.get(firstEnd) == '\n') {
+            this.lineSeparator = firstEnd > 0 && buffer.get(firstEnd - 1) == '\r' ? new byte[] {'\r', '\n'} : new byte[] {'\n'};
+        } else {
+            this.lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public int lineCount() {
+        return lineCount;
+    }
+
+    public byte[] lineSeparator() {
+        return lineSeparator;
+    }
+
+    @Override
+    public int find(List<String> block, int expectedIndex) {
+        if (block.isEmpty() || block.size() > lineCount) {
+            return NONE;
+        }
+
+        byte[][] blockBytes = new byte[block.size()][];
+        int[] blockHashes = new int[block.size()];
+        int anchor = 0;
+        int anchorCount = Integer.MAX_VALUE;
+        for (int i = 0; i < block.size(); i++) {
+            blockBytes[i] = block.get(i).getBytes(StandardCharsets.UTF_8);
+            blockHashes[i] = hashOf(blockBytes[i]);
+            int count = countOccurrences(blockBytes[i], blockHashes[i], anchorCount);
+            if (count == 0) {
+                return NONE;
+            }
+            if (count < anchorCount) {
+                anchor = i;
+                anchorCount = count;
+            }
+        }
+
+        int best = NONE;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = buckets[bucketOf(blockHashes[anchor])]; i != NONE; i = next[i]) {
+            int start = i - anchor;
+            if (hashes[i] != blockHashes[anchor] || start < 0 || start + block.size() > lineCount) {
+                continue;
+            }
+            long distance = Math.abs((long) start - expectedIndex);
+            if (distance < bestDistance && matchesAt(start, blockBytes, blockHashes)) {
+                best = start;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // Copy lines [from, to) with their original terminators. Returns false if the last line copied has no
+    // terminator, i.e. it is the unterminated last line of the file.
+    public boolean copyLines(int from, int to, WritableByteChannel out) throws IOException {
+        if (from >= to) {
+            return true;
+        }
+        ByteBuffer range = buffer.duplicate();
+        range.limit(lineStarts[to]);
+        range.position(lineStarts[from]);
+        while (range.hasRemaining()) {
+            out.write(range);
+        }
+        return buffer.get(lineStarts[to] - 1) == '\n';
+    }
+
+    private boolean matchesAt(int start, byte[][] blockBytes, int[] blockHashes) {
+        for (int j = 0; j < blockBytes.length; j++) {
+            if (hashes[start + j] != blockHashes[j] || !lineEquals(start + j, blockBytes[j])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int countOccurrences(byte[] line, int hash, int limit) {
+        int count = 0;
+        for (int i = buckets[bucketOf(hash)]; i != NONE && count < limit; i = next[i]) {
+            if (hashes[i] == hash && lineEquals(i, line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean lineEquals(int line, byte[] bytes) {
+        int start = lineStarts[line];
+        int end = contentEnd(start, lineStarts[line + 1]);
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // End of a line's content in [start, end), without its "\n" or "\r\n"
+    private int contentEnd(int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\n') {
+            end--;
+        }
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private int hashOf(int start, int end) {
+        end = contentEnd(start, end);
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash;
+    }
+
+    private static int hashOf(byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    private int bucketOf(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,181 @@
+package com.prporter.patcher;
+
+import com.prporter.model.ChangedFile;
+import com.prporter.model.HunkBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A diff hunk's body split into lines, each tagged as context, removed or added.
+ */
+public class PatchHunk {
+    public static final char CONTEXT = ' ';
+    public static final char REMOVED = '-';
+    public static final char ADDED = '+';
+    private static final Pattern HEADER = Pattern.compile("^@@ -(\\d+)");
+
+    private final int oldStart;
+    private final char[] kinds;
+    private final String[] texts;
+
+    private PatchHunk(int oldStart, char[] kinds, String[] texts) {
+        this.oldStart = oldStart;
+        this.kinds = kinds;
+        this.texts = texts;
+    }
+
+    // Parses hunk content as stored in DiffHunk, the first line being the @@ header
+    public static PatchHunk parse(String content) {
+        String[] hunkLines = content.split("\n");
+        Matcher header = HEADER.matcher(hunkLines[0]);
+        int oldStart = header.find() ? Integer.parseInt(header.group(1)) : -1;
+        List<Character> kinds = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 1; i < hunkLines.length; i++) {
+            String line = hunkLines[i];
+            if (line.startsWith("\\")) {
+                // "\ No newline at end of file" marker, not a line of the file
+                continue;
+            }
+            char kind = line.isEmpty() ? CONTEXT : line.charAt(0);
+            kinds.add(kind == REMOVED || kind == ADDED ? kind : CONTEXT);
+            texts.add(line.isEmpty() ? "" : line.substring(1));
+        }
+        char[] kindArray = new char[kinds.size()];
+        for (int i = 0; i < kindArray.length; i++) {
+            kindArray[i] = kinds.get(i);
+        }
+        return new PatchHunk(oldStart, kindArray, texts.toArray(new String[0]));
+    }
+
+    // Reads a DiffHunk's already classified lines, without going through its text
+    public static PatchHunk parse(ChangedFile.DiffHunk hunk) {
+        Matcher header = HEADER.matcher(hunk.getHeader());
+        int oldStart = header.find() ? Integer.parseInt(header.group(1)) : -1;
+        int size = 0;
+        for (int i = 0; i < hunk.getLineCount(); i++) {
+            if (hunk.getKind(i) != HunkBuffer.MARKER) {
+                size++;
+            }
+        }
+        char[] kinds = new char[size];
+        String[] texts = new String[size];
+        int next = 0;
+        for (int i = 0; i < hunk.getLineCount(); i++) {
+            char kind = hunk.getKind(i);
+            if (kind != HunkBuffer.MARKER) {
+                kinds[next] = kind;
+                texts[next++] = hunk.getLine(i);
+            }
+        }
+        return new PatchHunk(oldStart, kinds, texts);
+    }
+
+    // Splits a unified diff, e.g. an AI reply, into its hunks. File headers and anything before the first
+    // @@ line are ignored, a closing code fence ends the diff, and blank lines trailing a hunk are dropped.
+    public static List<PatchHunk> parseAll(String diff) {
+        List<PatchHunk> hunks = new ArrayList<>();
+        List<String> current = null;
+        for (String line : diff.split("\n")) {
+            if (line.startsWith("@@")) {
+                addParsed(hunks, current);
+                current = new ArrayList<>();
+                current.add(line);
+            } else if (line.startsWith("```")) {
+                if (current != null) {
+                    break;
+                }
+            } else if (current != null) {
+                current.add(line);
+            }
+        }
+        addParsed(hunks, current);
+        return hunks;
+    }
+
+    private static void addParsed(List<PatchHunk> hunks, List<String> hunkLines) {
+        if (hunkLines == null) {
+            return;
+        }
+        int end = hunkLines.size();
+        while (end > 1 && hunkLines.get(end - 1).trim().isEmpty()) {
+            end--;
+        }
+        hunks.add(parse(String.join("\n", hunkLines.subList(0, end))));
+    }
+
+    // First old line number from the @@ header, -1 if the header had none
+    public int oldStart() {
+        return oldStart;
+    }
+
+    public int size() {
+        return kinds.length;
+    }
+
+    public char kindAt(int index) {
+        return kinds[index];
+    }
+
+    public String textAt(int index) {
+        return texts[index];
+    }
+
+    // Lines the hunk expects to find in the file: context and removed lines
+    public List<String> oldLines() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] != ADDED) {
+                lines.add(texts[i]);
+            }
+        }
+        return lines;
+    }
+
+    // Change in line count when the hunk is applied
+    public int lineDelta() {
+        int delta = 0;
+        for (char kind : kinds) {
+            if (kind == ADDED) {
+                delta++;
+            } else if (kind == REMOVED) {
+                delta--;
+            }
+        }
+        return delta;
+    }
+
+    public int leadingContext() {
+        int count = 0;
+        while (count < kinds.length && kinds[count] == CONTEXT) {
+            count++;
+        }
+        return count;
+    }
+
+    public int trailingContext() {
+        int limit = kinds.length - leadingContext();
+        int count = 0;
+        while (count < limit && kinds[kinds.length - 1 - count] == CONTEXT) {
+            count++;
+        }
+        return count;
+    }
+
+    // Drops up to the given number of context lines from each end, the way patch applies fuzz
+    public PatchHunk trimContext(int leading, int trailing) {
+        int from = Math.min(leading, leadingContext());
+        int to = kinds.length - Math.min(trailing, trailingContext());
+        if (from == 0 && to == kinds.length) {
+            return this;
+        }
+        char[] trimmedKinds = new char[to - from];
+        String[] trimmedTexts = new String[to - from];
+        System.arraycopy(kinds, from, trimmedKinds, 0, to - from);
+        System.arraycopy(texts, from, trimmedTexts, 0, to - from);
+        return new PatchHunk(oldStart < 0 ? oldStart : oldStart + from, trimmedKinds, trimmedTexts);
+    }
+}
@@ -0,0 +1,174 @@
+package com.prporter.pipeline;
+
+import com.prporter.analyzer.PRAnalyzer;
+import com.prporter.checker.ConflictChecker;
+import com.prporter.model.ChangedFile;
+import com.prporter.model.FileStatus;
+import com.prporter.patcher.FilePatcher;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a PR through analyze, conflict check and patch instead of analyzing the whole PR first.
+ * The analyzer feeds a bounded queue, so at most queueCapacity analyzed files wait for a worker.
+ * Workers check and prepare patches concurrently; only the commit step is serialized. A processed file
+ * drops its hunks, so the diffs held at once are bounded by the queue and the workers, not the PR size.
+ */
+public class PortPipeline {
+    private static final Item END_OF_STREAM = new Item(-1, null);
+
+    private final PRAnalyzer prAnalyzer;
+    private final ConflictChecker conflictChecker;
+    private final FilePatcher filePatcher;
+    private final int queueCapacity;
+    private final int workers;
+    private final Object commitLock = new Object();
+
+    public PortPipeline(PRAnalyzer prAnalyzer, ConflictChecker conflictChecker, FilePatcher filePatcher,
+                        int queueCapacity, int workers) {
+        this.prAnalyzer = prAnalyzer;
+        this.conflictChecker = conflictChecker;
+        this.filePatcher = filePatcher;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.workers = Math.max(1, workers);
+    }
+
+    // Runs the whole port on the currently checked out port branch and returns the files in merge diff order
+    public List<ChangedFile> run(String sourceBranch, String targetBranch, String prNumber) throws GitAPIException, IOException {
+        System.out.println("Running pipelined port (queue size " + queueCapacity + ", " + workers + " workers)...");
+        BlockingQueue<Item> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Map<Integer, ChangedFile> processedFiles = new ConcurrentSkipListMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<Void>> consumers = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            consumers.add(executor.submit(() -> {
+                Item item;
+                while ((item = queue.take()) != END_OF_STREAM) {
+                    // processFile records any Exception against the file; an Error ends the worker and the run
+                    processFile(item.file, sourceBranch, targetBranch, prNumber);
+                    // Only the status and reason are kept until the run ends, the report reloads hunks it shows
+                    item.file.releaseDiffHunks();
+                    processedFiles.put(item.index, item.file);
+                }
+                return null;
+            }));
+        }
+
+        try {
+            prAnalyzer.analyzePR(sourceBranch, targetBranch, prNumber,
+                    (changedFile, index) -> put(queue, new Item(index, changedFile), consumers));
+        } finally {
+            try {
+                for (int w = 0; w < workers; w++) {
+                    put(queue, END_OF_STREAM, consumers);
+                }
+            } catch (JGitInternalException e) {
+                // A worker died; the others may be waiting on the queue, its failure is reported below
+                executor.shutdownNow();
+            }
+            try {
+                awaitConsumers(consumers);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        return new ArrayList<>(processedFiles.values());
+    }
+
+    private void processFile(ChangedFile file, String sourceBranch, String targetBranch, String prNumber) {
+        try {
+            if (conflictChecker.hasConflict(file, targetBranch)) {
+                file.setStatus(FileStatus.SKIPPED);
+                if (file.getReason() == null) {
+                    file.setReason("Conflict detected in target branch");
+                }
+                System.out.println("❌ " + file.getPath() + ": " + file.getReason());
+                return;
+            }
+
+            FilePatcher.PreparedPatch patch = filePatcher.preparePatch(file, sourceBranch);
+            synchronized (commitLock) {
+                filePatcher.commitPatch(patch, prNumber);
+            }
+            System.out.println("✅ " + file.getPath() + ": " + file.getStatus());
+        } catch (Exception e) {
+            System.out.println("❌ Error processing file " + file.getPath() + ": " + e.getMessage());
+            file.setStatus(FileStatus.SKIPPED);
+            file.setReason("Error: " + e.getMessage());
+        }
+    }
+
+    // Waits for room in the queue, failing instead of blocking forever once a worker has died
+    private static void put(BlockingQueue<Item> queue, Item item, List<Future<Void>> consumers) {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                for (Future<Void> consumer : consumers) {
+                    if (failed(consumer)) {
+                        throw new JGitInternalException("Pipeline worker stopped, no longer queueing changed files");
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JGitInternalException("Interrupted while queueing changed files", e);
+        }
+    }
+
+    private static boolean failed(Future<Void> consumer) throws InterruptedException {
+        if (!consumer.isDone()) {
+            return false;
+        }
+        try {
+            consumer.get();
+            return false;
+        } catch (ExecutionException | CancellationException e) {
+            return true;
+        }
+    }
+
+    // Reports the failure of the worker that died first, not that of the workers interrupted after it
+    private static void awaitConsumers(List<Future<Void>> consumers) {
+        Throwable failure = null;
+        for (Future<Void> consumer : consumers) {
+            try {
+                consumer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JGitInternalException("Interrupted while porting changed files", e);
+            } catch (ExecutionException e) {
+                if (failure == null || failure instanceof InterruptedException) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            throw new JGitInternalException("Pipeline worker failed: " + failure, failure);
+        }
+    }
+
+    private static class Item {
+        private final int index;
+        private final ChangedFile file;
+
+        Item(int index, ChangedFile file) {
+            this.index = index;
+            this.file = file;
+        }
+    }
+}
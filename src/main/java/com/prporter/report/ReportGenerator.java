@@ -2,6 +2,7 @@ package com.prporter.report;
 
 import com.prporter.model.ChangedFile;
 import com.prporter.model.FileStatus;
+import com.prporter.model.HunkBuffer;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -14,9 +15,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ReportGenerator {
+    private final List<String> summaryLines = new ArrayList<>();
+
     private static final String REPORT_TEMPLATE = 
             "<!DOCTYPE html>\n" +
             "<html>\n" +
@@ -42,6 +46,7 @@ public class ReportGenerator {
             "            <h1>PR Porting Report</h1>\n" +
             "            <p>Generated on: %s</p>\n" +
             "            <p>PR Number: %s</p>\n" +
+            "%s" +
             "        </div>\n" +
             "        <table class=\"file-list\">\n" +
             "            <thead>\n" +
@@ -59,6 +64,11 @@ public class ReportGenerator {
             "</body>\n" +
             "</html>";
 
+    // Extra line for the report header, e.g. run statistics
+    public void addSummaryLine(String line) {
+        summaryLines.add(line);
+    }
+
     public String generateReport(List<ChangedFile> changedFiles, String prNumber) throws IOException {
         // Create reports directory if it doesn't exist
         Path reportsDir = Paths.get("reports");
@@ -69,7 +79,11 @@ public class ReportGenerator {
         // Generate the report content
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         String fileRows = generateFileRows(changedFiles);
-        String reportContent = String.format(REPORT_TEMPLATE, timestamp, prNumber, fileRows);
+        StringBuilder summary = new StringBuilder();
+        for (String line : summaryLines) {
+            summary.append("            <p>").append(Jsoup.clean(line, Safelist.basic())).append("</p>\n");
+        }
+        String reportContent = String.format(REPORT_TEMPLATE, timestamp, prNumber, summary, fileRows);
 
         // Create the report file
         String fileName = String.format("pr-porting-report-%s-%s.html", prNumber, 
@@ -84,12 +98,13 @@ public class ReportGenerator {
         StringBuilder rows = new StringBuilder();
         
         for (ChangedFile file : changedFiles) {
-            String statusClass = file.getStatus() == FileStatus.PORTED ? "status-success" : "status-skipped";
-            String statusIcon = file.getStatus() == FileStatus.PORTED ? "✅" : "❌";
-            String statusText = file.getStatus() == FileStatus.PORTED ? "Successfully Ported" : "Skipped";
+            boolean skipped = file.getStatus() == FileStatus.SKIPPED || file.getStatus() == FileStatus.PENDING;
+            String statusClass = skipped ? "status-skipped" : "status-success";
+            String statusIcon = skipped ? "❌" : "✅";
+            String statusText = describe(file.getStatus());
             
             String details = "";
-            if (file.getStatus() == FileStatus.SKIPPED && file.getReason() != null) {
+            if (file.getStatus() != FileStatus.PORTED && file.getReason() != null) {
                 details = "<div class='diff'>" + Jsoup.clean(file.getReason(), Safelist.basic()) + "</div>";
             } else if (file.getDiffHunks() != null && !file.getDiffHunks().isEmpty()) {
                 details = generateDiffDetails(file.getDiffHunks());
@@ -106,18 +121,36 @@ public class ReportGenerator {
         return rows.toString();
     }
 
+    private static String describe(FileStatus status) {
+        switch (status) {
+            case PORTED: return "Successfully Ported";
+            case PARTIALLY_PORTED: return "Partially Ported";
+            case ADDED: return "Added";
+            case DELETED: return "Deleted";
+            case RENAMED: return "Renamed";
+            case BLOB_REPLACED: return "Replaced with PR Version";
+            case BINARY_REPLACED: return "Binary Replaced with PR Version";
+            case PENDING: return "Not Processed";
+            default: return "Skipped";
+        }
+    }
+
     private String generateDiffDetails(List<ChangedFile.DiffHunk> diffHunks) {
         StringBuilder details = new StringBuilder();
         details.append("<div class='diff'>");
         
         for (ChangedFile.DiffHunk hunk : diffHunks) {
-            String[] lines = hunk.getContent().split("\n");
-            for (String line : lines) {
-                if (line.startsWith("+")) {
+            details.append("<div>")
+                   .append(Jsoup.clean(hunk.getHeader(), Safelist.basic()))
+                   .append("</div>");
+            for (int i = 0; i < hunk.getLineCount(); i++) {
+                char kind = hunk.getKind(i);
+                String line = kind + hunk.getLine(i);
+                if (kind == HunkBuffer.ADDED) {
                     details.append("<div class='diff-added'>")
                            .append(Jsoup.clean(line, Safelist.basic()))
                            .append("</div>");
-                } else if (line.startsWith("-")) {
+                } else if (kind == HunkBuffer.REMOVED) {
                     details.append("<div class='diff-removed'>")
                            .append(Jsoup.clean(line, Safelist.basic()))
                            .append("</div>");
@@ -0,0 +1,97 @@
+package com.prporter.ai;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+    private long now = 1_000_000_000L;
+
+    private TokenBucket bucket(double tokensPerSecond, int burst) {
+        return new TokenBucket(tokensPerSecond, burst, () -> now);
+    }
+
+    private void advanceMillis(long millis) {
+        now += millis * 1_000_000;
+    }
+
+    @Test
+    void burstIsAvailableImmediately() {
+        TokenBucket bucket = bucket(2, 4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, bucket.reserve());
+        }
+    }
+
+    @Test
+    void reservationsBeyondTheBurstAreSpacedAtTheRate() {
+        TokenBucket bucket = bucket(2, 1);
+        assertEquals(0, bucket.reserve());
+        assertEquals(500, bucket.reserve());
+        assertEquals(1000, bucket.reserve());
+        assertEquals(1500, bucket.reserve());
+    }
+
+    @Test
+    void tokensRefillWhileIdleUpToTheBurst() {
+        TokenBucket bucket = bucket(2, 2);
+        bucket.reserve();
+        bucket.reserve();
+        advanceMillis(10_000);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(500, bucket.reserve());
+    }
+
+    @Test
+    void reservationsDuringAPauseAreSpreadOutAfterIt() {
+        TokenBucket bucket = bucket(2, 4);
+        bucket.pause(10_000);
+        long previous = -1;
+        for (int i = 1; i <= 20; i++) {
+            long wait = bucket.reserve();
+            assertEquals(10_000 + i * 500, wait);
+            assertTrue(wait > previous);
+            previous = wait;
+        }
+    }
+
+    @Test
+    void reservationsAfterAPauseEndsSeeNoBurst() {
+        TokenBucket bucket = bucket(2, 4);
+        bucket.pause(1_000);
+        advanceMillis(1_000);
+        assertEquals(500, bucket.reserve());
+        assertEquals(1_000, bucket.reserve());
+    }
+
+    @Test
+    void shorterPauseDoesNotCutALongerOneShort() {
+        TokenBucket bucket = bucket(2, 4);
+        bucket.pause(10_000);
+        bucket.pause(1_000);
+        assertEquals(10_500, bucket.reserve());
+    }
+
+    @Test
+    void pauseKeepsReservationsAlreadyQueued() {
+        TokenBucket bucket = bucket(2, 1);
+        bucket.reserve();
+        assertEquals(500, bucket.reserve());
+        bucket.pause(2_000);
+        // One token is already owed, the next one comes a full interval after that
+        assertEquals(3_000, bucket.reserve());
+    }
+
+    @Test
+    void nonPositiveRateStillLimits() {
+        for (double rate : new double[]{0, -1}) {
+            TokenBucket bucket = bucket(rate, 1);
+            assertEquals(0, bucket.reserve());
+            long wait = bucket.reserve();
+            assertEquals((long) (1_000 / TokenBucket.MIN_TOKENS_PER_SECOND), wait);
+            assertTrue(bucket.reserve() > wait);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.prporter.analyzer;
+
+import com.prporter.model.ChangedFile;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HunkExtractorTest {
+
+    // The extracted hunks as text, next to what DiffFormatter writes for the same edits
+    private static void assertMatchesDiffFormatter(String oldContent, String newContent) throws IOException {
+        RawText oldText = new RawText(oldContent.getBytes(StandardCharsets.UTF_8));
+        RawText newText = new RawText(newContent.getBytes(StandardCharsets.UTF_8));
+        try (InMemoryRepository repository = new InMemoryRepository(new DfsRepositoryDescription("test"))) {
+            HunkExtractor extractor = new HunkExtractor(repository, repository.newObjectReader(), 3);
+            EditList edits = extractor.diff(oldText, newText);
+
+            StringBuilder extracted = new StringBuilder();
+            for (ChangedFile.DiffHunk hunk : extractor.toHunks(edits, oldText, newText)) {
+                extracted.append(hunk.getContent());
+            }
+
+            ByteArrayOutputStream formatted = new ByteArrayOutputStream();
+            try (DiffFormatter formatter = new DiffFormatter(formatted)) {
+                formatter.setContext(3);
+                formatter.format(edits, oldText, newText);
+            }
+            assertEquals(formatted.toString(StandardCharsets.UTF_8.name()), extracted.toString());
+        }
+    }
+
+    @Test
+    void matchesDiffFormatterForTerminatedFiles() throws IOException {
+        assertMatchesDiffFormatter("a\nb\nc\nd\ne\nf\ng\nh\ni\nj\n", "a\nB\nc\nd\ne\nf\ng\nh\nI\nj\nk\n");
+    }
+
+    @Test
+    void marksANewFileWithoutTrailingNewline() throws IOException {
+        assertMatchesDiffFormatter("a\nb\nc\n", "a\nb\nc");
+    }
+
+    @Test
+    void marksAnOldFileWithoutTrailingNewline() throws IOException {
+        assertMatchesDiffFormatter("a\nb\nc", "a\nb\nc\nd\n");
+    }
+
+    @Test
+    void marksAContextLineWithoutTrailingNewline() throws IOException {
+        assertMatchesDiffFormatter("a\nb\nc\nd", "a\nB\nc\nd");
+    }
+}
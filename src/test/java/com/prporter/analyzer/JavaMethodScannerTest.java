@@ -0,0 +1,284 @@
+package com.prporter.analyzer;
+
+import com.prporter.model.MethodIndex;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JavaMethodScannerTest {
+
+    // "signature [start-end]" of every declaration found, in file order
+    private static List<String> scan(String... lines) {
+        byte[] text = String.join("\n", lines).concat("\n").getBytes(StandardCharsets.UTF_8);
+        List<String> methods = new ArrayList<>();
+        for (MethodIndex.MethodRange method : JavaMethodScanner.scan(text).getMethods()) {
+            methods.add(method.toString());
+        }
+        return methods;
+    }
+
+    @Test
+    void findsMethodsAndConstructorsWithTheirSpans() {
+        assertEquals(Arrays.asList("Foo() [2-3]", "size() [4-6]", "add(int, String) [7-7]"), scan(
+                "public class Foo {",
+                "    public Foo() {",
+                "    }",
+                "    public int size() {",
+                "        return 0;",
+                "    }",
+                "    void add(int index, String value) { }",
+                "}"));
+    }
+
+    @Test
+    void methodsWithoutABodyEndAtTheirSemicolon() {
+        assertEquals(Arrays.asList("run() [2-2]", "call(long) [3-4]", "value() [7-7]"), scan(
+                "public interface Task {",
+                "    void run();",
+                "    abstract int call(",
+                "            long timeout);",
+                "}",
+                "@interface Marker {",
+                "    String value() default \"\";",
+                "}"));
+    }
+
+    @Test
+    void bracesInCommentsAndLiteralsAreNotCounted() {
+        assertEquals(Arrays.asList("a() [2-8]", "b() [9-9]"), scan(
+                "class Foo {",
+                "    void a() {",
+                "        // }",
+                "        /* } { */",
+                "        String s = \"}\\\"{\";",
+                "        char c = '}';",
+                "        char q = '\\'';",
+                "    }",
+                "    void b() { }",
+                "}"));
+    }
+
+    @Test
+    void textBlocksAreSkippedAndTheirLinesCounted() {
+        assertEquals(Arrays.asList("a() [2-8]", "b() [9-9]"), scan(
+                "class Foo {",
+                "    String a() {",
+                "        return \"\"\"",
+                "            } void fake() {",
+                "            \\\"\"\" still inside",
+                "            {",
+                "            \"\"\";",
+                "    }",
+                "    void b() { }",
+                "}"));
+    }
+
+    @Test
+    void callsLambdasAndControlStatementsAreNotDeclarations() {
+        assertEquals(Arrays.asList("run(List<String>) [3-16]"), scan(
+                "class Foo {",
+                "    Runnable field = () -> { helper(); };",
+                "    void run(List<String> items) {",
+                "        if (items.isEmpty()) {",
+                "            return;",
+                "        }",
+                "        for (String item : items) {",
+                "            process(item);",
+                "        }",
+                "        items.forEach(item -> {",
+                "            log(item);",
+                "        });",
+                "        synchronized (this) {",
+                "            helper();",
+                "        }",
+                "    }",
+                "}"));
+    }
+
+    @Test
+    void annotationsAreSkippedAndStartTheDeclaration() {
+        assertEquals(Arrays.asList("a(String) [2-5]", "b(int) [6-7]"), scan(
+                "class Foo {",
+                "    @Override",
+                "    @SuppressWarnings({\"unchecked\", \"rawtypes\"})",
+                "    public String a(@Deprecated @javax.annotation.Nonnull(when = When.ALWAYS) final String value) {",
+                "        return value; }",
+                "    @Retry(times = 3) void b(int x)",
+                "    { }",
+                "}"));
+    }
+
+    @Test
+    void genericSignaturesArrayDimensionsAndVarargs() {
+        assertEquals(Arrays.asList(
+                "put(Map<String, List<Integer>>, int...) [2-2]",
+                "copy(T[], T) [3-3]",
+                "matrix(int[][], String[]) [4-4]",
+                "wildcard(List<? extends Number>) [5-5]"), scan(
+                "class Foo {",
+                "    <K, V> void put(Map<String, List<Integer>> map, int... values) { }",
+                "    public static <T extends Comparable<T>> T[] copy(T[] source, T fallback) { return source; }",
+                "    void matrix(int values[][], String[] names) { }",
+                "    void wildcard(List<? extends Number> numbers) { }",
+                "}"));
+    }
+
+    @Test
+    void signaturesSpreadOverSeveralLines() {
+        assertEquals(Arrays.asList("build(String, Map<String, Integer>) [2-8]"), scan(
+                "class Foo {",
+                "    public static Foo build(",
+                "            String name,",
+                "            Map<String,",
+                "                Integer> counts)",
+                "            throws IOException,",
+                "            InterruptedException {",
+                "        return null; }",
+                "}"));
+    }
+
+    @Test
+    void nestedLocalAndAnonymousClasses() {
+        assertEquals(Arrays.asList(
+                "outer() [2-13]",
+                "local() [4-4]",
+                "run() [7-9]",
+                "compare(String, String) [16-16]",
+                "inner() [19-19]"), scan(
+                "class Foo {",
+                "    void outer() {",
+                "        class Local {",
+                "            void local() { }",
+                "        }",
+                "        Runnable r = new Runnable() {",
+                "            public void run() {",
+                "                call(new int[] {1, 2});",
+                "            }",
+                "        };",
+                "        helper(new Object() {",
+                "        }.hashCode());",
+                "    }",
+                "    Comparator<String> byLength = new Comparator<String>(",
+                "    ) {",
+                "        public int compare(String a, String b) { return 0; }",
+                "    };",
+                "    static class Nested {",
+                "        void inner() { }",
+                "    }",
+                "}"));
+    }
+
+    @Test
+    void enumConstantsWithArgumentsAndBodies() {
+        assertEquals(Arrays.asList(
+                "apply(int) [3-3]",
+                "apply(int) [6-6]",
+                "apply(int) [8-8]",
+                "Op() [9-9]",
+                "Op(String) [10-10]"), scan(
+                "enum Op {",
+                "    PLUS {",
+                "        int apply(int a) { return a; }",
+                "    },",
+                "    MINUS(\"-\") {",
+                "        int apply(int a) { return -a; }",
+                "    }, NONE;",
+                "    abstract int apply(int a);",
+                "    Op() { }",
+                "    Op(String symbol) { }",
+                "}"));
+    }
+
+    @Test
+    void recordIsOnlyAKeywordInFrontOfATypeName() {
+        assertEquals(Arrays.asList("Point(int, int) [3-3]", "record() [5-5]", "use(Record) [6-8]"), scan(
+                "class Foo {",
+                "    public record Point(int x, int y) {",
+                "        public Point(int x, int y) { }",
+                "    }",
+                "    String record() { return null; }",
+                "    void use(Record record) {",
+                "        record(record);",
+                "    }",
+                "}"));
+    }
+
+    @Test
+    void unicodeIdentifiersAreKept() {
+        assertEquals(Arrays.asList("grüße(Straße) [2-2]"), scan(
+                "class Foo {",
+                "    void grüße(Straße straße) { }",
+                "}"));
+    }
+
+    @Test
+    void unbalancedBracesDoNotStopTheScan() {
+        assertEquals(Arrays.asList("a() [2-2]", "b() [5-5]"), scan(
+                "class Foo {",
+                "    void a() { }",
+                "}",
+                "}",
+                "class Bar { void b() { } }"));
+    }
+
+    @Test
+    void enclosingReturnsTheInnermostMethod() {
+        MethodIndex index = JavaMethodScanner.scan(String.join("\n",
+                "class Foo {",
+                "    void outer() {",
+                "        Runnable r = new Runnable() {",
+                "            public void run() {",
+                "                work();",
+                "            }",
+                "        };",
+                "        r.run();",
+                "    }",
+                "    int field;",
+                "    void last() { }",
+                "}").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(null, index.enclosing(1));
+        assertEquals("outer", index.enclosing(2).getName());
+        assertEquals("outer", index.enclosing(3).getName());
+        assertEquals("run", index.enclosing(4).getName());
+        assertEquals("run", index.enclosing(5).getName());
+        assertEquals("run", index.enclosing(6).getName());
+        assertEquals("outer", index.enclosing(7).getName());
+        assertEquals("outer", index.enclosing(9).getName());
+        assertEquals(null, index.enclosing(10));
+        assertEquals("last", index.enclosing(11).getName());
+        assertEquals(null, index.enclosing(12));
+    }
+
+    @Test
+    void enclosingLooksPastShorterMethodsThatStartLater() {
+        MethodIndex index = new MethodIndex(Arrays.asList(
+                new MethodIndex.MethodRange("outer", "outer()", 1, 20),
+                new MethodIndex.MethodRange("first", "first()", 2, 4),
+                new MethodIndex.MethodRange("second", "second()", 6, 8)));
+
+        assertEquals("first", index.enclosing(3).getName());
+        assertEquals("outer", index.enclosing(5).getName());
+        assertEquals("outer", index.enclosing(10).getName());
+        assertEquals(null, index.enclosing(21));
+    }
+
+    @Test
+    void lookupsByNameAndSignature() {
+        MethodIndex index = JavaMethodScanner.scan(String.join("\n",
+                "class Foo {",
+                "    void put(int a) { }",
+                "    void put(String a) { }",
+                "}").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, index.find("put").getStartLine());
+        assertEquals(3, index.findBySignature("put(String)").getStartLine());
+        assertEquals(null, index.find("get"));
+        assertEquals(null, index.findBySignature("put(long)"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.prporter.devtools;
+
+import com.prporter.ai.AIPatchClient;
+import com.prporter.ai.CircuitBreaker;
+import com.prporter.git.InCoreCommitter;
+import com.prporter.model.ChangedFile;
+import com.prporter.patcher.FilePatcher;
+import org.eclipse.jgit.api.Git;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Offline benchmark of the AI patch path. Builds a throwaway repository whose files each carry hunks that
+ * cannot be applied locally, ports them through FilePatcher against a MockAIServer, and reports the
+ * end-to-end port time, hunk outcomes and how many AI requests were in flight.
+ *
+ * Options are key=value arguments, e.g.
+ *   files=40 hunks=2 latency=200 rate429=0.1 retryAfter=1 rate5xx=0.05 malformed=0.02 inflight=4 rps=20 stream=false window=0
+ *   circuitFailures=5 cooldown=30 adaptive=true
+ */
+public class AIPatchBenchmark {
+    private static final int FILE_LINES = 200;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkSupport.parseOptions(args);
+        int files = Integer.parseInt(options.getOrDefault("files", "40"));
+        int hunks = Integer.parseInt(options.getOrDefault("hunks", "2"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("inflight", "4"));
+        double requestsPerSecond = Double.parseDouble(options.getOrDefault("rps", "20"));
+        boolean verbose = Boolean.parseBoolean(options.getOrDefault("verbose", "false"));
+
+        if ("true".equalsIgnoreCase(System.getenv("DISABLE_AI_PATCHING")) || "1".equals(System.getenv("DISABLE_AI_PATCHING"))) {
+            System.out.println("DISABLE_AI_PATCHING is set, unset it to benchmark the AI path");
+            System.exit(1);
+        }
+
+        Path repoDir = Files.createTempDirectory("ai-patch-benchmark");
+        try (MockAIServer server = new MockAIServer(42);
+             Git git = Git.init().setDirectory(repoDir.toFile()).call()) {
+            server.setLatencyMs(Long.parseLong(options.getOrDefault("latency", "200")));
+            server.setRateLimitRate(Double.parseDouble(options.getOrDefault("rate429", "0")),
+                    Integer.parseInt(options.getOrDefault("retryAfter", "1")));
+            server.setServerErrorRate(Double.parseDouble(options.getOrDefault("rate5xx", "0")));
+            server.setMalformedRate(Double.parseDouble(options.getOrDefault("malformed", "0")));
+
+            List<ChangedFile> changedFiles = createRepository(git, files, hunks);
+            git.branchCreate().setName("port").call();
+
+            AIPatchClient aiClient = new AIPatchClient(server.getEndpoint(), "mock-key", maxInFlight, requestsPerSecond);
+            aiClient.setStreaming(Boolean.parseBoolean(options.getOrDefault("stream", "false")));
+            aiClient.setCircuitBreaker(new CircuitBreaker(Integer.parseInt(options.getOrDefault("circuitFailures", "5")),
+                    Long.parseLong(options.getOrDefault("cooldown", "30")) * 1000));
+            aiClient.setAdaptiveConcurrency(Boolean.parseBoolean(options.getOrDefault("adaptive", "true")));
+            InCoreCommitter committer = new InCoreCommitter(git.getRepository(), "port");
+            FilePatcher filePatcher = new FilePatcher(git, null);
+            filePatcher.setAIClient(aiClient);
+            filePatcher.setAIPromptWindow(Integer.parseInt(options.getOrDefault("window", "0")));
+            filePatcher.setInCoreCommitter(committer);
+            filePatcher.setBatchCommit(true);
+
+            PrintStream console = System.out;
+            if (!verbose) {
+                System.setOut(new PrintStream(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+                }));
+            }
+            long start = System.nanoTime();
+            int portedHunks = 0;
+            int failedHunks = 0;
+            try {
+                List<CompletableFuture<FilePatcher.PreparedPatch>> patches = new ArrayList<>();
+                for (ChangedFile file : changedFiles) {
+                    patches.add(filePatcher.preparePatchAsync(file, "source"));
+                }
+                for (CompletableFuture<FilePatcher.PreparedPatch> future : patches) {
+                    FilePatcher.PreparedPatch patch = future.join();
+                    portedHunks += patch.getPortedHunks().size();
+                    failedHunks += patch.getFailedHunks().size();
+                    filePatcher.commitPatch(patch, "0");
+                }
+                filePatcher.commitBatch("0");
+                committer.finish();
+            } finally {
+                System.setOut(console);
+                aiClient.close();
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("Options: " + options);
+            System.out.println("Files: " + files + ", AI hunks: " + (files * hunks));
+            System.out.println("End-to-end port time: " + elapsedMs + " ms");
+            System.out.println("Hunks ported: " + portedHunks + ", failed: " + failedHunks);
+            System.out.println("Client requests sent: " + aiClient.getRequestsSent() +
+                    ", peak in flight: " + aiClient.getPeakInFlight() + "/" + aiClient.getMaxInFlight() +
+                    ", final concurrency limit: " + aiClient.getConcurrencyLimit());
+            System.out.println("Circuit opened: " + aiClient.getCircuitBreaker().getTimesOpened() +
+                    ", requests skipped: " + aiClient.getCircuitBreaker().getRejected());
+            System.out.println("Server requests: " + server.getRequests() + ", peak concurrent: " + server.getPeakActive() +
+                    ", 429: " + server.getRateLimited() + ", 5xx: " + server.getServerErrors() +
+                    ", malformed: " + server.getMalformed());
+        } finally {
+            BenchmarkSupport.deleteDirectory(repoDir.toFile());
+        }
+    }
+
+    // Files whose hunks' context is nowhere in the file, so every hunk falls back to AI
+    private static List<ChangedFile> createRepository(Git git, int files, int hunks) throws Exception {
+        List<ChangedFile> changedFiles = new ArrayList<>();
+        for (int f = 0; f < files; f++) {
+            String path = "src/File" + f + ".java";
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < FILE_LINES; i++) {
+                lines.add("    int value" + i + " = " + (f * FILE_LINES + i) + ";");
+            }
+            Path filePath = git.getRepository().getWorkTree().toPath().resolve(path);
+            Files.createDirectories(filePath.getParent());
+            Files.write(filePath, lines);
+
+            List<ChangedFile.DiffHunk> diffHunks = new ArrayList<>();
+            for (int h = 0; h < hunks; h++) {
+                int line = 10 + h * (FILE_LINES - 20) / Math.max(1, hunks);
+                String content = "@@ -" + line + ",3 +" + line + ",3 @@\n" +
+                        "     int renamed" + line + " = 0;\n" +
+                        "-    int stale" + line + " = 1;\n" +
+                        "+    int fresh" + line + " = 1;\n" +
+                        "     int renamed" + (line + 2) + " = 2;\n";
+                diffHunks.add(new ChangedFile.DiffHunk(line, line + 2, content));
+            }
+            ChangedFile changedFile = new ChangedFile(path);
+            changedFile.setDiffHunks(diffHunks);
+            changedFiles.add(changedFile);
+        }
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("Benchmark baseline").call();
+        return changedFiles;
+    }
+}
@@ -0,0 +1,87 @@
+package com.prporter.devtools;
+
+import com.prporter.analyzer.PRAnalyzer;
+import com.prporter.git.FetchCoordinator;
+import org.eclipse.jgit.api.Git;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of PR analysis at different worker counts. Builds a SyntheticPRRepository and runs analyzePR on
+ * its merge once per round for every thread count. The sink asks every file for its hunks, so a single-threaded
+ * run diffs them on first use and a multi-threaded run times the analysis pool loading them up front.
+ *
+ * Options are key=value arguments, e.g.
+ *   files=5000 lines=600 edits=8 threads=1,4,N rounds=3 verbose=false
+ * where N in threads stands for the number of available processors.
+ */
+public class AnalysisBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkSupport.parseOptions(args);
+        int files = Integer.parseInt(options.getOrDefault("files", "5000"));
+        int lines = Integer.parseInt(options.getOrDefault("lines", "600"));
+        int edits = Integer.parseInt(options.getOrDefault("edits", "8"));
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "3"));
+        boolean verbose = Boolean.parseBoolean(options.getOrDefault("verbose", "false"));
+        int processors = Runtime.getRuntime().availableProcessors();
+        // N may equal one of the other counts, each count is run once per round
+        Set<Integer> threadCounts = new LinkedHashSet<>();
+        for (String value : options.getOrDefault("threads", "1,4,N").split(",")) {
+            threadCounts.add(value.trim().equalsIgnoreCase("N") ? processors : Integer.parseInt(value.trim()));
+        }
+
+        Path repoDir = Files.createTempDirectory("analysis-benchmark");
+        long setupStart = System.nanoTime();
+        try (Git git = SyntheticPRRepository.create(repoDir, files, lines, edits)) {
+            System.out.println("Options: " + options);
+            System.out.println("Synthetic repository: " + files + " files x " + lines + " lines, " + edits +
+                    " edits each, built in " + (System.nanoTime() - setupStart) / 1_000_000 + " ms");
+            System.out.println("Available processors: " + processors);
+
+            // Fetched once, later runs skip the fetch and only measure the analysis
+            FetchCoordinator fetchCoordinator = new FetchCoordinator(git, null, Long.MAX_VALUE);
+            analyze(git, fetchCoordinator, 1, verbose);
+            for (int round = 1; round <= rounds; round++) {
+                for (int threads : threadCounts) {
+                    long start = System.nanoTime();
+                    int[] counts = analyze(git, fetchCoordinator, threads, verbose);
+                    long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                    System.out.println("round " + round + ": threads=" + threads + " files=" + counts[0] +
+                            " hunks=" + counts[1] + " " + elapsedMs + " ms");
+                }
+            }
+        } finally {
+            BenchmarkSupport.deleteDirectory(repoDir.toFile());
+        }
+    }
+
+    // Returns the number of changed files and of hunks found
+    private static int[] analyze(Git git, FetchCoordinator fetchCoordinator, int threads, boolean verbose) throws Exception {
+        PrintStream console = System.out;
+        if (!verbose) {
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+        }
+        try {
+            PRAnalyzer analyzer = new PRAnalyzer(git, fetchCoordinator);
+            analyzer.setAnalysisThreads(threads);
+            AtomicInteger hunks = new AtomicInteger();
+            int changedFiles = analyzer.analyzePR(SyntheticPRRepository.BRANCH, SyntheticPRRepository.BRANCH,
+                    SyntheticPRRepository.PR_NUMBER, (file, index) -> hunks.addAndGet(file.getDiffHunks().size()));
+            return new int[]{changedFiles, hunks.get()};
+        } finally {
+            System.setOut(console);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.prporter.devtools;
+
+import com.prporter.analyzer.HunkExtractor;
+import com.prporter.model.ChangedFile;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Allocation and time comparison of hunk extraction over the merge of a SyntheticPRRepository. The old path
+ * formats each file's diff as text with DiffFormatter, splits it and re-parses the @@ headers; HunkExtractor
+ * builds the hunks from the RawText/EditList pair. Hunk ranges and content of both paths are compared before
+ * anything is timed. Allocation is the calling thread's, as reported by the JVM.
+ *
+ * Options are key=value arguments, e.g.
+ *   files=2000 lines=600 edits=10 context=0 rounds=5
+ */
+public class HunkExtractionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkSupport.parseOptions(args);
+        int files = Integer.parseInt(options.getOrDefault("files", "2000"));
+        int lines = Integer.parseInt(options.getOrDefault("lines", "600"));
+        int edits = Integer.parseInt(options.getOrDefault("edits", "10"));
+        int context = Integer.parseInt(options.getOrDefault("context", "0"));
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "5"));
+
+        Path repoDir = Files.createTempDirectory("hunk-extraction-benchmark");
+        try (Git git = SyntheticPRRepository.create(repoDir, files, lines, edits);
+             ObjectReader reader = git.getRepository().newObjectReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            Repository repository = git.getRepository();
+            RevCommit merge = revWalk.parseCommit(repository.resolve("refs/remotes/origin/" + SyntheticPRRepository.BRANCH));
+            CanonicalTreeParser baseTree = new CanonicalTreeParser();
+            baseTree.reset(reader, revWalk.parseCommit(merge.getParent(0)).getTree());
+            CanonicalTreeParser mergeTree = new CanonicalTreeParser();
+            mergeTree.reset(reader, merge.getTree());
+            List<DiffEntry> diffs = git.diff().setOldTree(baseTree).setNewTree(mergeTree).call();
+            HunkExtractor hunkExtractor = new HunkExtractor(repository, reader, context);
+
+            int hunks = 0;
+            int mismatches = 0;
+            for (DiffEntry diff : diffs) {
+                List<ChangedFile.DiffHunk> formatted = formatterHunks(repository, diff, context);
+                List<ChangedFile.DiffHunk> extracted = hunkExtractor.extract(diff);
+                hunks += extracted.size();
+                if (!sameHunks(formatted, extracted)) {
+                    mismatches++;
+                }
+            }
+            System.out.println("Options: " + options);
+            System.out.println("Files: " + diffs.size() + ", hunks: " + hunks + ", files whose hunks differ: " + mismatches);
+
+            for (int round = 1; round <= rounds; round++) {
+                long start = System.nanoTime();
+                long allocated = allocatedBytes();
+                for (DiffEntry diff : diffs) {
+                    formatterHunks(repository, diff, context);
+                }
+                long formatterNanos = System.nanoTime() - start;
+                long formatterBytes = allocatedBytes() - allocated;
+
+                start = System.nanoTime();
+                allocated = allocatedBytes();
+                for (DiffEntry diff : diffs) {
+                    hunkExtractor.extract(diff);
+                }
+                long extractorNanos = System.nanoTime() - start;
+                long extractorBytes = allocatedBytes() - allocated;
+
+                System.out.println("round " + round + ": formatter + split " + (formatterBytes >> 20) + " MB " +
+                        formatterNanos / 1_000_000 + " ms | EditList " + (extractorBytes >> 20) + " MB " +
+                        extractorNanos / 1_000_000 + " ms");
+            }
+        } finally {
+            BenchmarkSupport.deleteDirectory(repoDir.toFile());
+        }
+    }
+
+    // The DiffFormatter path PRAnalyzer used before HunkExtractor, kept as the baseline
+    private static List<ChangedFile.DiffHunk> formatterHunks(Repository repository, DiffEntry diff, int context) throws IOException {
+        List<ChangedFile.DiffHunk> diffHunks = new ArrayList<>();
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+             DiffFormatter diffFormatter = new DiffFormatter(out)) {
+            diffFormatter.setRepository(repository);
+            diffFormatter.setContext(context);
+            diffFormatter.format(diff);
+            String[] lines = out.toString().split("\n");
+
+            int currentStartLine = 0;
+            int currentEndLine = 0;
+            StringBuilder currentContent = new StringBuilder();
+            boolean inHunk = false;
+            for (String line : lines) {
+                if (line.startsWith("@@")) {
+                    if (inHunk && currentContent.length() > 0) {
+                        diffHunks.add(new ChangedFile.DiffHunk(currentStartLine, currentEndLine, currentContent.toString()));
+                    }
+                    currentContent = new StringBuilder();
+                    inHunk = true;
+                    String[] parts = line.split(" ");
+                    if (parts.length > 1) {
+                        String[] lineNumbers = parts[1].substring(1).split(",");
+                        currentStartLine = Integer.parseInt(lineNumbers[0]);
+                        currentEndLine = lineNumbers.length > 1
+                                ? currentStartLine + Integer.parseInt(lineNumbers[1]) - 1 : currentStartLine;
+                    }
+                    currentContent.append(line).append("\n");
+                } else if (inHunk) {
+                    currentContent.append(line).append("\n");
+                }
+            }
+            if (inHunk && currentContent.length() > 0) {
+                diffHunks.add(new ChangedFile.DiffHunk(currentStartLine, currentEndLine, currentContent.toString()));
+            }
+        }
+        return diffHunks;
+    }
+
+    private static boolean sameHunks(List<ChangedFile.DiffHunk> expected, List<ChangedFile.DiffHunk> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            ChangedFile.DiffHunk a = expected.get(i);
+            ChangedFile.DiffHunk b = actual.get(i);
+            if (a.getStartLine() != b.getStartLine() || a.getEndLine() != b.getEndLine()
+                    || !a.getContent().equals(b.getContent())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,190 @@
+package com.prporter.devtools;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the chat completions endpoint, for exercising the AI patch path offline. Each
+ * request waits the configured latency and then, at the configured rates, answers 429 with Retry-After,
+ * 500, or a malformed body; otherwise it echoes back the last ```java block of the prompt, i.e. the target
+ * content unchanged, as a plain or server-sent-events response.
+ */
+public class MockAIServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private final AtomicInteger serverErrors = new AtomicInteger();
+    private final AtomicInteger malformed = new AtomicInteger();
+
+    private volatile long latencyMs;
+    private volatile double rateLimitRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile double serverErrorRate;
+    private volatile double malformedRate;
+
+    public MockAIServer(long seed) throws IOException {
+        this.random = new Random(seed);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-ai-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", this::handle);
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public void setRateLimitRate(double rateLimitRate, int retryAfterSeconds) {
+        this.rateLimitRate = rateLimitRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public void setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    public void setMalformedRate(double malformedRate) {
+        this.malformedRate = malformedRate;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getPeakActive() {
+        return peakActive.get();
+    }
+
+    public int getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public int getServerErrors() {
+        return serverErrors.get();
+    }
+
+    public int getMalformed() {
+        return malformed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            JsonObject request = JsonParser.parseReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)).getAsJsonObject();
+            Thread.sleep(latencyMs);
+
+            double roll;
+            synchronized (random) {
+                roll = random.nextDouble();
+            }
+            if (roll < rateLimitRate) {
+                rateLimited.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                respond(exchange, 429, "application/json", "{\"error\":{\"message\":\"Rate limit reached\"}}");
+            } else if ((roll -= rateLimitRate) < serverErrorRate) {
+                serverErrors.incrementAndGet();
+                respond(exchange, 500, "application/json", "{\"error\":{\"message\":\"Internal error\"}}");
+            } else if (roll - serverErrorRate < malformedRate) {
+                malformed.incrementAndGet();
+                respond(exchange, 200, "application/json", "{\"choices\":[{\"message\":{\"content\":\"trunc");
+            } else if (request.has("stream") && request.get("stream").getAsBoolean()) {
+                respond(exchange, 200, "text/event-stream", streamed(reply(request)));
+            } else {
+                respond(exchange, 200, "application/json", completion(reply(request)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "application/json", "{\"error\":{\"message\":\"Bad request\"}}");
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    // The last ```java block of the prompt, or the manual review answer if there is none
+    private static String reply(JsonObject request) {
+        JsonArray messages = request.getAsJsonArray("messages");
+        String prompt = messages.get(messages.size() - 1).getAsJsonObject().get("content").getAsString();
+        int start = prompt.lastIndexOf("```java\n");
+        int end = start < 0 ? -1 : prompt.indexOf("\n```", start + 8);
+        return end < 0 ? "MANUAL REVIEW NEEDED" : prompt.substring(start + 8, end);
+    }
+
+    private static String completion(String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject body = new JsonObject();
+        body.addProperty("object", "chat.completion");
+        body.add("choices", choices);
+        return body.toString();
+    }
+
+    // One event per line of the reply, the way a model streams tokens
+    private static String streamed(String content) {
+        StringBuilder events = new StringBuilder();
+        for (String piece : content.split("(?<=\n)")) {
+            JsonObject delta = new JsonObject();
+            delta.addProperty("content", piece);
+            JsonObject choice = new JsonObject();
+            choice.addProperty("index", 0);
+            choice.add("delta", delta);
+            JsonArray choices = new JsonArray();
+            choices.add(choice);
+            JsonObject chunk = new JsonObject();
+            chunk.add("choices", choices);
+            events.append("data: ").append(chunk).append("\n\n");
+        }
+        return events.append("data: [DONE]\n\n").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.prporter.devtools;
+
+import com.prporter.checker.LineRangeIndex;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Micro-benchmark of the conflict check's overlap query on one file with thousands of changes on each side.
+ * Compares the old walk, which formats the target diff as text and re-splits and walks all of it for every PR
+ * hunk, with a LineRangeIndex built once from the EditList and queried by binary search. Both must report the
+ * same number of overlapping hunks.
+ *
+ * Options are key=value arguments, e.g.
+ *   lines=60000 targetEdits=3000 prHunks=3000 rounds=3
+ */
+public class OverlapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkSupport.parseOptions(args);
+        int lines = Integer.parseInt(options.getOrDefault("lines", "60000"));
+        int targetEdits = Integer.parseInt(options.getOrDefault("targetEdits", "3000"));
+        int prHunks = Integer.parseInt(options.getOrDefault("prHunks", "3000"));
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "3"));
+
+        // HEAD and target differ in every (lines / targetEdits)-th line
+        StringBuilder head = new StringBuilder();
+        StringBuilder target = new StringBuilder();
+        int editEvery = Math.max(1, lines / targetEdits);
+        for (int i = 0; i < lines; i++) {
+            head.append("line ").append(i).append('\n');
+            target.append(i % editEvery == editEvery / 2 ? "changed " : "line ").append(i).append('\n');
+        }
+        RawText headText = new RawText(head.toString().getBytes(StandardCharsets.UTF_8));
+        RawText targetText = new RawText(target.toString().getBytes(StandardCharsets.UTF_8));
+        EditList edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+                .diff(RawTextComparator.DEFAULT, headText, targetText);
+
+        // PR hunks of one to three lines at random positions
+        Random random = new Random(42);
+        int[][] hunks = new int[prHunks][];
+        for (int i = 0; i < prHunks; i++) {
+            int start = random.nextInt(lines) + 1;
+            hunks[i] = new int[]{start, start + random.nextInt(3)};
+        }
+
+        System.out.println("Options: " + options);
+        System.out.println("File lines: " + lines + ", target edits: " + edits.size() + ", PR hunks: " + prHunks);
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (DiffFormatter formatter = new DiffFormatter(out)) {
+                formatter.format(edits, headText, targetText);
+            }
+            String targetDiffContent = out.toString();
+            int walkOverlaps = 0;
+            for (int[] hunk : hunks) {
+                if (hasOverlappingLines(targetDiffContent, hunk[0], hunk[1])) {
+                    walkOverlaps++;
+                }
+            }
+            long walkNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            LineRangeIndex index = new LineRangeIndex(edits);
+            int indexOverlaps = 0;
+            for (int[] hunk : hunks) {
+                if (index.overlaps(hunk[0], hunk[1])) {
+                    indexOverlaps++;
+                }
+            }
+            long indexNanos = System.nanoTime() - start;
+
+            System.out.printf("round %d: text walk %d ms (%d overlapping) | LineRangeIndex %.3f ms (%d overlapping)%n",
+                    round, walkNanos / 1_000_000, walkOverlaps, indexNanos / 1e6, indexOverlaps);
+        }
+    }
+
+    // The walk ConflictChecker used before LineRangeIndex, kept as the baseline
+    private static boolean hasOverlappingLines(String diffContent, int startLine, int endLine) {
+        String[] lines = diffContent.split("\n");
+        int currentLine = 0;
+
+        for (String line : lines) {
+            if (line.startsWith("@@")) {
+                String[] parts = line.split(" ");
+                if (parts.length >= 2) {
+                    String[] lineNumbers = parts[1].split(",");
+                    if (lineNumbers.length >= 2) {
+                        currentLine = Integer.parseInt(lineNumbers[0].substring(1));
+                    }
+                }
+            } else if (line.startsWith("+") || line.startsWith("-")) {
+                if (currentLine >= startLine && currentLine <= endLine) {
+                    return true;
+                }
+                if (!line.startsWith("-")) {
+                    currentLine++;
+                }
+            } else {
+                currentLine++;
+            }
+        }
+        return false;
+    }
+}
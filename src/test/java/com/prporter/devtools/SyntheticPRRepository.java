@@ -0,0 +1,107 @@
+package com.prporter.devtools;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Builds a throwaway origin whose BRANCH ends in the merge of PR #PR_NUMBER, and a clone of it to analyze.
+ * The PR changes every one of the given number of Java files, each of a given number of lines, in a given
+ * number of places spread evenly over the file. Objects are written straight into the object database, so
+ * thousands of files take seconds rather than a checkout and an add.
+ */
+public class SyntheticPRRepository {
+    public static final String BRANCH = "main";
+    public static final String PR_NUMBER = "42";
+    private static final int DIRECTORIES = 50;
+    // Lines of one generated method
+    private static final int METHOD_LINES = 5;
+
+    private SyntheticPRRepository() {
+    }
+
+    // Creates origin.git and a clone without checkout under directory, returns the clone
+    public static Git create(Path directory, int files, int lines, int edits) throws Exception {
+        File originDir = directory.resolve("origin.git").toFile();
+        try (Git origin = Git.init().setBare(true).setInitialBranch(BRANCH).setDirectory(originDir).call()) {
+            Repository repository = origin.getRepository();
+            PersonIdent author = new PersonIdent("Benchmark", "benchmark@example.com");
+            try (ObjectInserter inserter = repository.newObjectInserter()) {
+                ObjectId baseTree = writeTree(inserter, files, lines, 0);
+                ObjectId featureTree = writeTree(inserter, files, lines, edits);
+                ObjectId base = writeCommit(inserter, baseTree, author, "Synthetic baseline");
+                ObjectId feature = writeCommit(inserter, featureTree, author, "Synthetic PR changes", base);
+                ObjectId merge = writeCommit(inserter, featureTree, author,
+                        "Merge pull request #" + PR_NUMBER + " from benchmark/feature", base, feature);
+                inserter.flush();
+
+                RefUpdate refUpdate = repository.updateRef(Constants.R_HEADS + BRANCH);
+                refUpdate.setNewObjectId(merge);
+                refUpdate.setForceUpdate(true);
+                refUpdate.update();
+            }
+        }
+        return Git.cloneRepository()
+                .setURI(originDir.toURI().toString())
+                .setDirectory(directory.resolve("work").toFile())
+                .setNoCheckout(true)
+                .call();
+    }
+
+    private static ObjectId writeTree(ObjectInserter inserter, int files, int lines, int edits) throws IOException {
+        DirCache index = DirCache.newInCore();
+        DirCacheBuilder builder = index.builder();
+        for (int f = 0; f < files; f++) {
+            DirCacheEntry entry = new DirCacheEntry("src/pkg" + (f % DIRECTORIES) + "/File" + f + ".java");
+            entry.setFileMode(FileMode.REGULAR_FILE);
+            entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, javaFile(f, lines, edits)));
+            builder.add(entry);
+        }
+        builder.finish();
+        return index.writeTree(inserter);
+    }
+
+    // A class of small methods; each edit flips the operator in the first statement of one method
+    private static byte[] javaFile(int fileNumber, int lines, int edits) {
+        int methods = Math.max(1, (lines - 3) / METHOD_LINES);
+        int editEvery = edits > 0 ? Math.max(1, methods / edits) : 0;
+        StringBuilder text = new StringBuilder(lines * 32);
+        text.append("package pkg").append(fileNumber % DIRECTORIES).append(";\n");
+        text.append("public class File").append(fileNumber).append(" {\n");
+        for (int m = 0; m < methods; m++) {
+            boolean edited = editEvery > 0 && m % editEvery == 0 && m / editEvery < edits;
+            text.append("    public int method").append(m).append("(int x) {\n");
+            text.append("        int a = x ").append(edited ? '-' : '+').append(' ').append(m).append(";\n");
+            text.append("        int b = a * ").append(fileNumber).append(";\n");
+            text.append("        return a + b;\n");
+            text.append("    }\n");
+        }
+        text.append("}\n");
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ObjectId writeCommit(ObjectInserter inserter, ObjectId tree, PersonIdent author, String message,
+                                        ObjectId... parents) throws IOException {
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        commit.setParentIds(parents);
+        commit.setAuthor(author);
+        commit.setCommitter(author);
+        commit.setMessage(message);
+        return inserter.insert(commit);
+    }
+}
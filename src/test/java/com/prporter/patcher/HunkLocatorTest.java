@@ -0,0 +1,33 @@
+package com.prporter.patcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HunkLocatorTest {
+
+    @Test
+    void findsExactBlockClosestToExpectedPosition() {
+        List<String> file = Arrays.asList("a", "b", "c", "a", "b", "c");
+        HunkLocator locator = new HunkLocator(file);
+        assertEquals(0, locator.find(Arrays.asList("a", "b"), 1));
+        assertEquals(3, locator.find(Arrays.asList("a", "b"), 4));
+    }
+
+    @Test
+    void exactLocatorDoesNotIgnoreWhitespace() {
+        HunkLocator locator = new HunkLocator(Arrays.asList("class A {", "    int  x = 1;", "}"));
+        assertEquals(-1, locator.find(Arrays.asList("int x = 1;"), 0));
+    }
+
+    @Test
+    void whitespaceInsensitiveLocatorMatchesReindentedLines() {
+        HunkLocator locator = new HunkLocator(Arrays.asList("class A {", "    int  x = 1;", "\treturn x;  ", "}"), true);
+        assertEquals(1, locator.find(Arrays.asList("int x = 1;"), 0));
+        assertEquals(1, locator.find(Arrays.asList("  int x  =  1;", "return x;"), 0));
+        assertEquals(-1, locator.find(Arrays.asList("int x = 2;"), 0));
+    }
+}